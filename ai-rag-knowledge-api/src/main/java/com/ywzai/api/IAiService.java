@@ -1,18 +1,42 @@
 package com.ywzai.api;
 
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import reactor.core.publisher.Flux;
 
+import java.util.List;
+
 public interface IAiService {
 
     ChatResponse generate(String model, String message);
 
 
+    /**
+     * 流式对话
+     *
+     * @param ragTag        知识库标签，可传多个（重复参数或逗号分隔），一次检索全部知识库
+     * @param retrievalMode 检索方式：VECTOR / HYBRID（不区分大小写），为空或无法识别时使用默认配置
+     * @param tagMerge      多个知识库时的合并方式：GLOBAL / QUOTA（不区分大小写），为空或无法识别时使用默认配置
+     */
     Flux<ChatResponse> generateStreamForMemory(@RequestParam String model,
                                                @RequestParam String message,
-                                               @RequestParam(required = false, defaultValue = "") String ragTag,
-                                               @RequestParam String memoryId);
+                                               @RequestParam(required = false) List<String> ragTag,
+                                               @RequestParam String memoryId,
+                                               @RequestParam(required = false, defaultValue = "") String retrievalMode,
+                                               @RequestParam(required = false, defaultValue = "") String tagMerge);
+
+    /**
+     * 精简流式对话，参数与 generateStreamForMemory 相同
+     * 事件 delta 的数据为 {"t":"文本增量"}；事件 done 的数据为 ChatStreamDoneDTO 的 JSON，之后服务端关闭流；
+     * 事件 fail 的数据为错误信息；空闲时定期发送注释行作为心跳。客户端断开后立即取消对大模型的调用
+     */
+    Flux<ServerSentEvent<String>> generateStreamDelta(@RequestParam String model,
+                                                      @RequestParam String message,
+                                                      @RequestParam(required = false) List<String> ragTag,
+                                                      @RequestParam(required = false, defaultValue = "") String memoryId,
+                                                      @RequestParam(required = false, defaultValue = "") String retrievalMode,
+                                                      @RequestParam(required = false, defaultValue = "") String tagMerge);
 }
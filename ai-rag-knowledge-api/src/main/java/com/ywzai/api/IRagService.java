@@ -1,8 +1,11 @@
 package com.ywzai.api;
 
 
+import com.ywzai.api.dto.IngestionJobDTO;
+import com.ywzai.api.dto.SearchRecallReportDTO;
 import com.ywzai.api.response.Response;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
 
 import java.io.IOException;
 import java.util.List;
@@ -17,8 +20,37 @@ public interface IRagService {
 
     Response<List<String>> queryRagTagList();
 
+    /**
+     * 提交文件上传任务
+     *
+     * @return 任务ID
+     */
     Response<String> uploadFile(String ragTag, List<MultipartFile> files);
 
+    /**
+     * 提交代码库解析任务
+     *
+     * @return 任务ID
+     */
     Response<String> analyzeGitRepository(String repoUrl) throws IOException;
 
+    /**
+     * 删除知识库及其全部向量数据
+     *
+     * @return 知识库是否存在
+     */
+    Response<Boolean> dropRagTag(String ragTag);
+
+    /**
+     * 评估知识库向量检索的召回率与延迟
+     *
+     * @param samples 抽样问题数
+     * @param topK    每次检索返回条数
+     */
+    Response<SearchRecallReportDTO> querySearchRecallReport(String ragTag, Integer samples, Integer topK);
+
+    Response<IngestionJobDTO> queryIngestionJob(String jobId);
+
+    Flux<IngestionJobDTO> streamIngestionJob(String jobId);
+
 }
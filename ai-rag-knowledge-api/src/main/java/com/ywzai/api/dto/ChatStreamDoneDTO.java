@@ -0,0 +1,33 @@
+package com.ywzai.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-01
+ * @Description: 精简流式对话的结束事件，回答的全部分片发送完后发送一次
+ * @Version: 1.0
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ChatStreamDoneDTO {
+    /** 结束原因，正常结束为 STOP */
+    private String finishReason;
+    /** 生成回答的模型 */
+    private String model;
+    /** 提示词 token 数，大模型未返回用量时为 null */
+    private Integer promptTokens;
+    /** 回答 token 数 */
+    private Integer completionTokens;
+    /** 总 token 数 */
+    private Integer totalTokens;
+    /** 是否为回放的缓存回答 */
+    private boolean cached;
+    /** 从收到请求到结束的耗时（毫秒） */
+    private long elapsedMs;
+}
@@ -0,0 +1,41 @@
+package com.ywzai.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-21
+ * @Description: 知识库导入任务进度
+ * @Version: 1.0
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class IngestionJobDTO {
+    /** 任务ID */
+    private String jobId;
+    /** 任务类型：FILE_UPLOAD / GIT_REPOSITORY */
+    private String jobType;
+    /** 知识库标签 */
+    private String ragTag;
+    /** 任务状态：PENDING / RUNNING / SUCCESS / PARTIAL_FAILED / FAILED */
+    private String status;
+    /** 子任务总数（文件数） */
+    private int totalTasks;
+    /** 已成功的子任务数 */
+    private int completedTasks;
+    /** 已失败的子任务数 */
+    private int failedTasks;
+    /** 已生成的文本片段数 */
+    private int totalSegments;
+    /** 任务说明或错误信息 */
+    private String message;
+    /** 创建时间 */
+    private long createTime;
+    /** 最后更新时间 */
+    private long updateTime;
+}
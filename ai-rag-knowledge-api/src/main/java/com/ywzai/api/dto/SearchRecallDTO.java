@@ -0,0 +1,29 @@
+package com.ywzai.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-27
+ * @Description: 单个检索参数组合的召回率与延迟
+ * @Version: 1.0
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SearchRecallDTO {
+    /** 检索档位：FAST / BALANCED / ACCURATE，精确检索为 EXACT */
+    private String profile;
+    /** 重排倍数，候选数为 topK 的倍数 */
+    private int rescoreFactor;
+    /** 与精确检索结果相比的平均召回率 */
+    private double recall;
+    /** 平均延迟（毫秒） */
+    private double avgLatencyMs;
+    /** P95 延迟（毫秒） */
+    private double p95LatencyMs;
+}
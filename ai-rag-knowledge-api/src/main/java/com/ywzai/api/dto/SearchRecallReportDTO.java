@@ -0,0 +1,37 @@
+package com.ywzai.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-27
+ * @Description: 知识库向量检索的召回率/延迟报告
+ * @Version: 1.0
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class SearchRecallReportDTO {
+    /** 知识库标签 */
+    private String ragTag;
+    /** 索引类型：hnsw / ivfflat / none */
+    private String indexType;
+    /** 索引压缩方式：NONE / HALFVEC / BINARY */
+    private String compression;
+    /** 向量维度 */
+    private int dimensions;
+    /** 分区向量索引占用的空间（字节） */
+    private long indexBytes;
+    /** 抽样的问题数 */
+    private int samples;
+    /** 每次检索返回条数 */
+    private int topK;
+    /** 各参数组合的结果 */
+    private List<SearchRecallDTO> results;
+}
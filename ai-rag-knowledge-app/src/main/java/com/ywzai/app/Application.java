@@ -1,10 +1,14 @@
 package com.ywzai.app;
 
+import org.springframework.ai.autoconfigure.vectorstore.pgvector.PgVectorStoreAutoConfiguration;
 import org.springframework.beans.factory.annotation.Configurable;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
-@SpringBootApplication(scanBasePackages = {
+import java.util.Map;
+
+// 向量表的读写由 PgVectorRepository 负责，不需要 Spring AI 自动配置的 PgVectorStore
+@SpringBootApplication(exclude = PgVectorStoreAutoConfiguration.class, scanBasePackages = {
         "com.ywzai.trigger",
         "com.ywzai.app",
         "com.ywzai.api"
@@ -13,7 +17,12 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 public class Application {
 
     public static void main(String[] args) {
-        SpringApplication.run(Application.class);
+        SpringApplication application = new SpringApplication(Application.class);
+        // 默认暴露 /actuator/prometheus 供 Prometheus 抓取，外部配置中的同名属性优先
+        application.setDefaultProperties(Map.of(
+                "management.endpoints.web.exposure.include", "health,prometheus",
+                "management.metrics.tags.application", "ai-rag-knowledge"));
+        application.run(args);
     }
 
 }
@@ -0,0 +1,46 @@
+package com.ywzai.app.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-21
+ * @Description: 全局共享的知识库导入线程池，文件上传和代码库解析任务都在这里执行
+ * @Version: 1.0
+ */
+@Slf4j
+@Configuration
+@EnableConfigurationProperties(IngestionThreadPoolConfigProperties.class)
+public class IngestionThreadPoolConfig {
+
+    @Bean(name = "ingestionExecutor", destroyMethod = "shutdown")
+    public ThreadPoolExecutor ingestionExecutor(IngestionThreadPoolConfigProperties properties) {
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "rag-ingestion-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                properties.getParallelism(),
+                properties.getParallelism(),
+                properties.getKeepAliveSeconds(),
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueSize()),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        log.info("知识库导入线程池初始化完成，并行度: {}, 队列大小: {}", properties.getParallelism(), properties.getQueueSize());
+        return executor;
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.ywzai.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-21
+ * @Description: 知识库导入线程池配置
+ * @Version: 1.0
+ */
+@Data
+@ConfigurationProperties(prefix = "rag.ingestion.executor", ignoreInvalidFields = true)
+public class IngestionThreadPoolConfigProperties {
+
+    /** 并行度，全局同时处理的导入任务数，默认为4 */
+    private int parallelism = 4;
+    /** 等待队列大小，队列满后拒绝新的导入任务，默认为1000 */
+    private int queueSize = 1000;
+    /** 空闲线程存活时间（单位：秒），默认为60 */
+    private long keepAliveSeconds = 60;
+
+}
@@ -10,11 +10,10 @@ import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
 import org.springframework.ai.openai.OpenAiEmbeddingOptions;
 import org.springframework.ai.openai.api.OpenAiApi;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.jdbc.core.JdbcTemplate;
 
 
 @Configuration
@@ -23,6 +22,10 @@ public class OpenAiConfig {
     @Value("${spring.ai.openai.embedding.options.model}")
     private String model;
 
+    /** 输出维度，text-embedding-3 系列支持缩短维度，0 表示使用模型默认维度；修改后需同步 rag.store.dimensions 与表结构 */
+    @Value("${spring.ai.openai.embedding.options.dimensions:0}")
+    private int dimensions;
+
 
 
 
@@ -35,23 +38,17 @@ public class OpenAiConfig {
     }
 
     @Bean
-    public TokenTextSplitter tokenTextSplitter() {
-        return new TokenTextSplitter();
-    }
-
-    @Bean(name = "openAiPgVectorStore")
-    public org.springframework.ai.vectorstore.pgvector.PgVectorStore pgVectorStore(OpenAiApi openAiApi, JdbcTemplate jdbcTemplate) {
-        OpenAiEmbeddingModel embeddingModel = new OpenAiEmbeddingModel(openAiApi, MetadataMode.EMBED, OpenAiEmbeddingOptions.builder()
+    public OpenAiEmbeddingModel openAiEmbeddingModel(OpenAiApi openAiApi) {
+        return new OpenAiEmbeddingModel(openAiApi, MetadataMode.EMBED, OpenAiEmbeddingOptions.builder()
                 .model(model)
+                .dimensions(dimensions > 0 ? dimensions : null)
                 .build());
-        return org.springframework.ai.vectorstore.pgvector.PgVectorStore.builder(jdbcTemplate, embeddingModel)
-                .vectorTableName("vector_store_openai")
-                .build();
     }
 
     @Bean
-    public ChatClient.Builder chatClientBuilder(OpenAiChatModel openAiChatModel) {
-        return new DefaultChatClientBuilder(openAiChatModel, ObservationRegistry.NOOP, (ChatClientObservationConvention) null);
+    public ChatClient.Builder chatClientBuilder(OpenAiChatModel openAiChatModel, ObjectProvider<ObservationRegistry> observationRegistry) {
+        // 使用 actuator 提供的观测注册表，ChatClient 的调用耗时与 token 用量随其他指标一起导出
+        return new DefaultChatClientBuilder(openAiChatModel, observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP), (ChatClientObservationConvention) null);
     }
 
 }
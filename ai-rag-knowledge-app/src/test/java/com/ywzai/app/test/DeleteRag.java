@@ -1,13 +1,11 @@
 package com.ywzai.app.test;
 
 
+import com.ywzai.trigger.service.knowledge.KnowledgeBaseService;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.Test;
-import org.redisson.api.RList;
-import org.redisson.api.RedissonClient;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.jdbc.core.JdbcTemplate;
 
 /**
  * @Author: ywz
@@ -20,10 +18,7 @@ import org.springframework.jdbc.core.JdbcTemplate;
 public class DeleteRag {
 
     @Resource
-    private JdbcTemplate jdbcTemplate;
-
-    @Resource
-    private RedissonClient redissonClient;
+    private KnowledgeBaseService knowledgeBaseService;
 
     @Test
     public void deleteRag(){
@@ -32,14 +27,10 @@ public class DeleteRag {
             return;
         }
 
-        String sql = "DELETE FROM vector_store_openai WHERE metadata->>'knowledge' = ?";
-        int deletedCount = jdbcTemplate.update(sql, knowledgeTag.trim());
-
-        log.info("成功删除知识库 [{}] 下的 {} 条文档", knowledgeTag, deletedCount);
+        // 直接删除知识库分区，同时从 Redis 标签列表中移除
+        boolean exists = knowledgeBaseService.dropKnowledgeBase(knowledgeTag.trim());
 
-        // 可选：同时从 Redis 标签列表中移除
-        RList<String> ragTagList = redissonClient.getList("ragTag");
-        ragTagList.remove(knowledgeTag);
+        log.info("删除知识库 [{}]，是否存在: {}", knowledgeTag, exists);
     }
 
 }
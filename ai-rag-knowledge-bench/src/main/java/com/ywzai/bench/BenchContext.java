@@ -0,0 +1,42 @@
+package com.ywzai.bench;
+
+import com.ywzai.trigger.service.embedding.EmbeddingDispatcher;
+import com.ywzai.trigger.service.ingest.StreamingDocumentReader;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.Map;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-03
+ * @Description: 基准测试用的最小 Spring 容器，只包含分割、上下文装配、文档读取和向量化调度相关的组件，
+ * 向量模型替换为 FakeEmbeddingModel，配置项使用代码中的默认值，可通过 -Drag.xxx=yyy 覆盖
+ * @Version: 1.0
+ */
+public final class BenchContext {
+
+    private static final int DIMENSIONS = 1536;
+
+    private BenchContext() {
+    }
+
+    public static AnnotationConfigApplicationContext open() {
+        return open(Map.of());
+    }
+
+    /**
+     * @param properties 覆盖的配置项，例如不同的分割参数
+     */
+    public static AnnotationConfigApplicationContext open(Map<String, Object> properties) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("bench", properties));
+        context.registerBean("openAiEmbeddingModel", FakeEmbeddingModel.class, () -> new FakeEmbeddingModel(DIMENSIONS));
+        context.registerBean(EmbeddingDispatcher.class);
+        context.registerBean(StreamingDocumentReader.class);
+        context.scan("com.ywzai.trigger.service.chunk", "com.ywzai.trigger.service.context");
+        context.refresh();
+        return context;
+    }
+
+}
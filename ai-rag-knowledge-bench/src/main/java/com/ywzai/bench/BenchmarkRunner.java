@@ -0,0 +1,35 @@
+package com.ywzai.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-03
+ * @Description: 基准测试入口，默认开启 GC 分析器统计每次操作的分配字节数（gc.alloc.rate.norm），
+ * 结果以 JSON 写入 jmh-result.json，便于与上一次结果比较；命令行参数与 JMH 原生参数相同，例如
+ * java -jar benchmarks.jar Splitter -rff splitter.json
+ * @Version: 1.0
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include("com\\.ywzai\\.bench\\..*Benchmark");
+        }
+        Options options = builder
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(commandLine.getResultFormat().orElse(ResultFormatType.JSON))
+                .result(commandLine.getResult().orElse("jmh-result.json"))
+                .build();
+        new Runner(options).run();
+    }
+
+}
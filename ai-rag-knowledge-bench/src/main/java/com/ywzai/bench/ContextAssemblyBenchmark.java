@@ -0,0 +1,81 @@
+package com.ywzai.bench;
+
+import com.ywzai.trigger.service.context.ContextAssembler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-03
+ * @Description: 提示词上下文装配：对检索候选去重、合并相邻片段、重排并按 token 预算截取，
+ * 候选中混有完全重复和首尾重叠的片段，与真实检索结果的分布接近
+ * @Version: 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContextAssemblyBenchmark {
+
+    private static final String QUERY = "知识库更新后缓存如何失效，向量索引怎样在召回率和延迟之间取舍？";
+    private static final int CHUNK_CHARS = 600;
+
+    @Param({"20", "50"})
+    private int candidates;
+
+    private AnnotationConfigApplicationContext context;
+    private ContextAssembler contextAssembler;
+    private List<Document> knowledge;
+    private List<Document> history;
+
+    @Setup
+    public void setup() {
+        context = BenchContext.open();
+        contextAssembler = context.getBean(ContextAssembler.class);
+        String text = Corpora.chinese(candidates * CHUNK_CHARS * 2);
+        Random random = new Random(42);
+        knowledge = new ArrayList<>(candidates);
+        history = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            int start;
+            if (i % 5 == 1) {
+                // 与上一个片段首尾重叠
+                start = Math.min(text.length() - CHUNK_CHARS, (i - 1) * CHUNK_CHARS + CHUNK_CHARS / 2);
+            } else if (i % 5 == 3) {
+                // 与更早的片段完全重复
+                start = random.nextInt(i) * CHUNK_CHARS;
+            } else {
+                start = i * CHUNK_CHARS;
+            }
+            String chunk = text.substring(start, start + CHUNK_CHARS);
+            double score = 1 - i * 0.5 / candidates;
+            knowledge.add(Document.builder().text(chunk).metadata(Map.of("source", "doc-" + (i / 4) + ".md")).score(score).build());
+            history.add(Document.builder().text(chunk.substring(0, CHUNK_CHARS / 3)).score(score).build());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String assembleKnowledge() {
+        return contextAssembler.assembleKnowledge(QUERY, knowledge);
+    }
+
+    @Benchmark
+    public String assembleHistory() {
+        return contextAssembler.assembleHistory(QUERY, history);
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.ywzai.bench;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-03
+ * @Description: 基准测试语料，用固定种子生成中文文档和 Java 代码，每次运行内容相同，结果可以横向比较
+ * @Version: 1.0
+ */
+public final class Corpora {
+
+    public static final String CHINESE = "chinese";
+    public static final String CODE = "code";
+
+    private static final List<String> SENTENCES = List.of(
+            "检索增强生成先从知识库中找到与问题相关的片段，再把这些片段作为上下文交给大模型。",
+            "向量数据库按余弦距离返回最相似的文本片段，索引类型决定了召回率和延迟之间的取舍。",
+            "文档在入库前需要切分成合适大小的片段，片段过大会稀释语义，过小又会丢失上下文。",
+            "对于代码仓库，按类和方法的边界切分比按固定长度切分更能保留完整的语义单元。",
+            "会话记忆保存最近的若干轮对话，更早的内容被合并成摘要，避免提示词无限增长。",
+            "当多个知识库同时参与检索时，可以统一排序，也可以为每个知识库保留固定的名额。",
+            "缓存命中时直接复用上一次的检索结果，知识库更新后版本号变化，旧缓存自然失效。",
+            "流式输出让用户更早看到第一个字，客户端断开后应当立即停止生成以节省费用。",
+            "监控指标需要覆盖每个阶段的耗时，否则很难判断性能退化究竟发生在哪一步。",
+            "批量写入时使用 COPY 协议可以显著减少往返次数，适合导入体积较大的文件。");
+
+    private static final List<String> IDENTIFIERS = List.of(
+            "knowledge", "document", "embedding", "chunk", "source", "memory", "context", "retrieval", "score", "batch");
+
+    private Corpora() {
+    }
+
+    /**
+     * 生成指定语料
+     *
+     * @param corpus 语料类型：chinese / code
+     * @param chars  大致字符数
+     */
+    public static String generate(String corpus, int chars) {
+        return CODE.equals(corpus) ? code(chars) : chinese(chars);
+    }
+
+    /**
+     * 与语料对应的文件名，分割时据此选择切分器
+     */
+    public static String filename(String corpus) {
+        return CODE.equals(corpus) ? "KnowledgeService.java" : "knowledge.txt";
+    }
+
+    public static String chinese(int chars) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(chars + 256);
+        while (text.length() < chars) {
+            int sentences = 3 + random.nextInt(5);
+            for (int i = 0; i < sentences; i++) {
+                text.append(SENTENCES.get(random.nextInt(SENTENCES.size())));
+            }
+            text.append("\n\n");
+        }
+        return text.toString();
+    }
+
+    public static String code(int chars) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(chars + 512);
+        text.append("package com.ywzai.sample;\n\nimport java.util.ArrayList;\nimport java.util.List;\n\npublic class KnowledgeService {\n\n");
+        int method = 0;
+        while (text.length() < chars) {
+            String name = IDENTIFIERS.get(random.nextInt(IDENTIFIERS.size()));
+            text.append("    /**\n     * 处理 ").append(name).append(" 相关的逻辑\n     */\n")
+                    .append("    public List<String> process").append(Character.toUpperCase(name.charAt(0))).append(name.substring(1)).append(method++)
+                    .append("(List<String> ").append(name).append("s, int limit) {\n")
+                    .append("        List<String> result = new ArrayList<>();\n")
+                    .append("        for (String item : ").append(name).append("s) {\n");
+            int statements = 2 + random.nextInt(6);
+            for (int i = 0; i < statements; i++) {
+                text.append("            if (item.length() > ").append(random.nextInt(100)).append(" && result.size() < limit) {\n")
+                        .append("                result.add(item.trim() + \"-").append(IDENTIFIERS.get(random.nextInt(IDENTIFIERS.size()))).append("\");\n")
+                        .append("            }\n");
+            }
+            text.append("        }\n        return result;\n    }\n\n");
+        }
+        text.append("}\n");
+        return text.toString();
+    }
+
+    /**
+     * 把语料写入临时文件
+     */
+    public static Path write(String corpus, int chars, Charset charset) throws Exception {
+        String filename = filename(corpus);
+        Path file = Files.createTempFile("rag-bench-", "-" + filename);
+        Files.writeString(file, generate(corpus, chars), charset);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.ywzai.bench;
+
+import com.ywzai.trigger.service.ingest.StreamingDocumentReader;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-03
+ * @Description: 上传文件的读取开销：Tika 识别编码并解码，UTF-8 与 GBK 的中文文本对比
+ * @Version: 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingDetectionBenchmark {
+
+    @Param({"UTF-8", "GBK"})
+    private String charset;
+
+    @Param({"1048576"})
+    private int chars;
+
+    private AnnotationConfigApplicationContext context;
+    private StreamingDocumentReader reader;
+    private Timer parseTimer;
+    private Path file;
+
+    @Setup
+    public void setup() throws Exception {
+        context = BenchContext.open();
+        reader = context.getBean(StreamingDocumentReader.class);
+        parseTimer = Timer.builder("bench.parse").register(new SimpleMeterRegistry());
+        file = Corpora.write(Corpora.CHINESE, chars, Charset.forName(charset));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * @return 读出的字符数
+     */
+    @Benchmark
+    public long read() {
+        Long total = reader.read(file, Corpora.filename(Corpora.CHINESE), parseTimer)
+                .map(window -> (long) window.getText().length())
+                .reduce(0L, Long::sum)
+                .block();
+        return total == null ? 0 : total;
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.ywzai.bench;
+
+import com.ywzai.trigger.service.chunk.ChunkingEngine;
+import com.ywzai.trigger.service.embedding.EmbeddingDispatcher;
+import com.ywzai.trigger.service.ingest.StreamingDocumentReader;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-03
+ * @Description: 单个文件导入的本地开销：流式读取→分割→按批向量化，与 DocumentIngestionPipeline 的批次大小一致，
+ * 向量由 FakeEmbeddingModel 生成，不包含入库
+ * @Version: 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestionBenchmark {
+
+    private static final int BATCH_SIZE = 256;
+
+    @Param({Corpora.CHINESE, Corpora.CODE})
+    private String corpus;
+
+    @Param({"1048576"})
+    private int chars;
+
+    private AnnotationConfigApplicationContext context;
+    private StreamingDocumentReader reader;
+    private ChunkingEngine chunkingEngine;
+    private EmbeddingDispatcher embeddingDispatcher;
+    private Timer parseTimer;
+    private Path file;
+    private String filename;
+
+    @Setup
+    public void setup() throws Exception {
+        context = BenchContext.open();
+        reader = context.getBean(StreamingDocumentReader.class);
+        chunkingEngine = context.getBean(ChunkingEngine.class);
+        embeddingDispatcher = context.getBean(EmbeddingDispatcher.class);
+        parseTimer = Timer.builder("bench.parse").register(new SimpleMeterRegistry());
+        file = Corpora.write(corpus, chars, StandardCharsets.UTF_8);
+        filename = Corpora.filename(corpus);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * @return 生成的向量数
+     */
+    @Benchmark
+    public int readSplitEmbed() {
+        Integer vectors = reader.read(file, filename, parseTimer)
+                .concatMapIterable(window -> chunkingEngine.split(window, filename), 1)
+                .buffer(BATCH_SIZE)
+                .map(batch -> embeddingDispatcher.embed(batch.stream().map(document -> document.getText()).toList()).size())
+                .reduce(0, Integer::sum)
+                .block();
+        return vectors == null ? 0 : vectors;
+    }
+
+}
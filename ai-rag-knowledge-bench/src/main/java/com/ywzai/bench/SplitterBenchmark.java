@@ -0,0 +1,63 @@
+package com.ywzai.bench;
+
+import com.ywzai.trigger.service.chunk.ChunkingEngine;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-03
+ * @Description: 分割性能：Spring AI 的 TokenTextSplitter 与按结构切分的 ChunkingEngine 在中文文档和代码上的对比，
+ * 262144 字符超过 rag.chunker.parallel-threshold-chars，会走并行合并
+ * @Version: 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitterBenchmark {
+
+    @Param({Corpora.CHINESE, Corpora.CODE})
+    private String corpus;
+
+    @Param({"16384", "262144"})
+    private int chars;
+
+    private AnnotationConfigApplicationContext context;
+    private ChunkingEngine chunkingEngine;
+    private TokenTextSplitter tokenTextSplitter;
+    private String text;
+    private String filename;
+
+    @Setup
+    public void setup() {
+        context = BenchContext.open();
+        chunkingEngine = context.getBean(ChunkingEngine.class);
+        tokenTextSplitter = new TokenTextSplitter();
+        text = Corpora.generate(corpus, chars);
+        filename = Corpora.filename(corpus);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Document> tokenTextSplitter() {
+        return tokenTextSplitter.apply(List.of(new Document(text)));
+    }
+
+    @Benchmark
+    public List<Document> chunkingEngine() {
+        return chunkingEngine.split(new Document(text), filename);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.ywzai.bench.load;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-04
+ * @Description: 解析 --key=value 形式的命令行参数，未传的参数使用默认值
+ * @Version: 1.0
+ */
+public class CommandLineArgs {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    public CommandLineArgs(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("参数格式应为 --key=value: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                values.put(arg.substring(2), "true");
+            } else {
+                values.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+    }
+
+    public String get(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return values.containsKey(key) ? Integer.parseInt(values.get(key)) : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return values.containsKey(key) ? Long.parseLong(values.get(key)) : defaultValue;
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        return values.containsKey(key) ? Double.parseDouble(values.get(key)) : defaultValue;
+    }
+
+    public Map<String, String> asMap() {
+        return Map.copyOf(values);
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.ywzai.bench.load;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-04
+ * @Description: 线程安全的延迟样本集合，汇总时按最近秩法计算百分位
+ * @Version: 1.0
+ */
+public class LatencyStats {
+
+    private final ConcurrentLinkedQueue<Double> samples = new ConcurrentLinkedQueue<>();
+
+    public void record(double millis) {
+        samples.add(millis);
+    }
+
+    public int count() {
+        return samples.size();
+    }
+
+    /**
+     * @return count、min、p50、p95、p99、max、avg，没有样本时只有 count
+     */
+    public Map<String, Object> summary() {
+        double[] sorted = samples.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", sorted.length);
+        if (sorted.length == 0) {
+            return summary;
+        }
+        summary.put("min", round(sorted[0]));
+        summary.put("p50", round(percentile(sorted, 50)));
+        summary.put("p95", round(percentile(sorted, 95)));
+        summary.put("p99", round(percentile(sorted, 99)));
+        summary.put("max", round(sorted[sorted.length - 1]));
+        summary.put("avg", round(Arrays.stream(sorted).average().orElse(0)));
+        return summary;
+    }
+
+    private static double percentile(double[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+}
@@ -0,0 +1,332 @@
+package com.ywzai.bench.load;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.ywzai.bench.Corpora;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-04
+ * @Description: 压测驱动，对运行中的应用依次执行导入阶段和对话阶段：
+ * 导入阶段并发上传固定种子生成的文件并轮询任务直到结束，统计任务耗时百分位和每秒字节数、片段数；
+ * 对话阶段模拟多个并发会话，每个会话按顺序发送多轮互不相同的问题到 generate_stream_delta，统计首 token 和完整回答耗时的 p50/p95/p99。
+ * 结果同时打印并写入 JSON 文件。
+ * 导入任务超过 --job-timeout-seconds（默认 600）仍未结束时记为失败。
+ * 启动：java -cp benchmarks.jar com.ywzai.bench.load.LoadTestRunner --target=http://localhost:8090 --sessions=32 --turns=5
+ * @Version: 1.0
+ */
+public class LoadTestRunner {
+
+    private static final Set<String> FINISHED_JOB_STATUS = Set.of("SUCCESS", "PARTIAL_FAILED", "FAILED");
+
+    private static final List<String> QUESTIONS = List.of(
+            "检索增强生成的基本流程是什么？",
+            "文档切分得太大或太小分别有什么问题？",
+            "代码仓库应该按什么边界切分？",
+            "会话记忆是如何控制提示词长度的？",
+            "多个知识库一起检索时结果怎么合并？",
+            "知识库更新后缓存是怎么失效的？",
+            "客户端断开后为什么要立即停止生成？",
+            "怎样判断性能退化发生在哪个阶段？");
+
+    private final String target;
+    private final String model;
+    private final String ragTag;
+    /** 单个导入任务的最长等待时间，超时记为失败 */
+    private final Duration jobTimeout;
+    private final HttpClient httpClient;
+    private final Random random;
+
+    public LoadTestRunner(CommandLineArgs args) {
+        this.target = args.get("target", "http://localhost:8090");
+        this.model = args.get("model", "gpt-4o-mini");
+        this.ragTag = args.get("rag-tag", "loadtest");
+        this.jobTimeout = Duration.ofSeconds(args.getLong("job-timeout-seconds", 600));
+        this.random = new Random(args.getLong("seed", 42));
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newCachedThreadPool())
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineArgs commandLine = new CommandLineArgs(args);
+        LoadTestRunner runner = new LoadTestRunner(commandLine);
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("target", runner.target);
+        report.put("startTime", System.currentTimeMillis());
+        report.put("options", commandLine.asMap());
+        int uploads = commandLine.getInt("uploads", 20);
+        if (uploads > 0) {
+            report.put("ingestion", runner.runIngestion(uploads, commandLine.getInt("upload-concurrency", 4),
+                    commandLine.getInt("upload-chars", 262144)));
+        }
+        int sessions = commandLine.getInt("sessions", 16);
+        if (sessions > 0) {
+            report.put("chat", runner.runChat(sessions, commandLine.getInt("turns", 5), commandLine.getInt("warmup-turns", 1)));
+        }
+        String json = JSON.toJSONString(report, SerializerFeature.PrettyFormat);
+        Path output = Path.of(commandLine.get("output", "loadtest-result.json"));
+        Files.writeString(output, json);
+        System.out.println(json);
+        System.out.println("压测结果已写入 " + output.toAbsolutePath());
+        System.exit(0);
+    }
+
+    /**
+     * 导入阶段：中文文档和代码文件交替上传，每个任务一个文件
+     */
+    public Map<String, Object> runIngestion(int uploads, int concurrency, int chars) throws Exception {
+        System.out.printf("导入阶段：%d 个文件，每个约 %d 字符，并发 %d%n", uploads, chars, concurrency);
+        // 先删除上一次压测的知识库，否则未变化的片段会被去重跳过，吞吐量无法比较
+        HttpRequest drop = HttpRequest.newBuilder(URI.create(target + "/api/v1/rag/drop_rag_tag?ragTag=" + encode(ragTag)))
+                .timeout(Duration.ofMinutes(1))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        httpClient.send(drop, HttpResponse.BodyHandlers.discarding());
+        LatencyStats jobLatency = new LatencyStats();
+        AtomicLong bytes = new AtomicLong();
+        AtomicLong segments = new AtomicLong();
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < uploads; i++) {
+            String corpus = i % 2 == 0 ? Corpora.CHINESE : Corpora.CODE;
+            String content = Corpora.generate(corpus, chars);
+            String filename = i + "-" + Corpora.filename(corpus);
+            futures.add(executor.submit(() -> {
+                long jobStart = System.nanoTime();
+                try {
+                    JSONObject job = upload(filename, content.getBytes(StandardCharsets.UTF_8));
+                    if (job == null || !"SUCCESS".equals(job.getString("status"))) {
+                        failed.incrementAndGet();
+                        return;
+                    }
+                    jobLatency.record((System.nanoTime() - jobStart) / 1e6);
+                    bytes.addAndGet(content.getBytes(StandardCharsets.UTF_8).length);
+                    segments.addAndGet(job.getIntValue("totalSegments"));
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    System.err.println("上传失败: " + filename + " - " + e.getMessage());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("files", uploads);
+        result.put("failed", failed.get());
+        result.put("wallSeconds", Math.round(seconds * 100) / 100.0);
+        result.put("jobLatencyMs", jobLatency.summary());
+        result.put("mbPerSecond", Math.round(bytes.get() / 1024.0 / 1024.0 / seconds * 100) / 100.0);
+        result.put("segmentsPerSecond", Math.round(segments.get() / seconds * 100) / 100.0);
+        return result;
+    }
+
+    /**
+     * 对话阶段：每个会话使用独立的 memoryId，按顺序发送多轮问题，前 warmupTurns 轮不计入统计
+     */
+    public Map<String, Object> runChat(int sessions, int turns, int warmupTurns) throws Exception {
+        System.out.printf("对话阶段：%d 个并发会话，每个 %d 轮（预热 %d 轮）%n", sessions, turns, warmupTurns);
+        LatencyStats firstToken = new LatencyStats();
+        LatencyStats completion = new LatencyStats();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong deltas = new AtomicLong();
+        List<List<String>> questions = new ArrayList<>();
+        for (int s = 0; s < sessions; s++) {
+            List<String> session = new ArrayList<>();
+            for (int t = 0; t < turns; t++) {
+                session.add(question(s * turns + t));
+            }
+            questions.add(session);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(sessions);
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int s = 0; s < sessions; s++) {
+            String memoryId = "loadtest-" + s + "-" + start;
+            List<String> session = questions.get(s);
+            futures.add(executor.submit(() -> {
+                for (int t = 0; t < session.size(); t++) {
+                    boolean measured = t >= warmupTurns;
+                    try {
+                        ChatResult result = chat(session.get(t), memoryId);
+                        if (!measured) {
+                            continue;
+                        }
+                        if (!result.success) {
+                            failed.incrementAndGet();
+                            continue;
+                        }
+                        firstToken.record(result.firstTokenMs);
+                        completion.record(result.completionMs);
+                        deltas.addAndGet(result.deltas);
+                    } catch (Exception e) {
+                        if (measured) {
+                            failed.incrementAndGet();
+                        }
+                        System.err.println("对话失败: " + memoryId + " - " + e.getMessage());
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sessions", sessions);
+        result.put("requests", completion.count() + failed.get());
+        result.put("failed", failed.get());
+        result.put("wallSeconds", Math.round(seconds * 100) / 100.0);
+        result.put("timeToFirstTokenMs", firstToken.summary());
+        result.put("completionMs", completion.summary());
+        result.put("requestsPerSecond", Math.round(completion.count() / seconds * 100) / 100.0);
+        result.put("deltasPerSecond", Math.round(deltas.get() / seconds * 100) / 100.0);
+        return result;
+    }
+
+    /**
+     * 在固定问题后附加编号，每轮问题都不相同，避免检索缓存和语义回答缓存命中使延迟偏低
+     */
+    private String question(int index) {
+        return QUESTIONS.get(random.nextInt(QUESTIONS.size())) + "请结合第 " + (index + 1) + " 个示例说明。";
+    }
+
+    /**
+     * 发送一轮对话并读取事件流，首 token 以收到第一个 delta 事件为准
+     */
+    private ChatResult chat(String message, String memoryId) throws IOException, InterruptedException {
+        String url = target + "/api/v1/openai/generate_stream_delta?model=" + encode(model) + "&message=" + encode(message)
+                + "&ragTag=" + encode(ragTag) + "&memoryId=" + encode(memoryId);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .header("Accept", "text/event-stream")
+                .timeout(Duration.ofMinutes(5))
+                .GET()
+                .build();
+        ChatResult result = new ChatResult();
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            response.body().close();
+            return result;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            String event = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("event:")) {
+                    event = line.substring("event:".length()).trim();
+                } else if (line.isEmpty()) {
+                    event = null;
+                } else if (line.startsWith("data:") && "delta".equals(event)) {
+                    if (result.deltas++ == 0) {
+                        result.firstTokenMs = (System.nanoTime() - start) / 1e6;
+                    }
+                } else if (line.startsWith("data:") && "done".equals(event)) {
+                    // 上游中途断开时应用也可能正常结束事件流，没有结束原因的回答视为失败
+                    JSONObject done = JSON.parseObject(line.substring("data:".length()).trim());
+                    result.success = result.deltas > 0 && done != null && !isBlank(done.getString("finishReason"));
+                } else if (line.startsWith("data:") && "fail".equals(event)) {
+                    result.success = false;
+                    break;
+                }
+            }
+        }
+        result.completionMs = (System.nanoTime() - start) / 1e6;
+        return result;
+    }
+
+    /**
+     * 上传单个文件并轮询任务直到结束或超时
+     *
+     * @return 任务最终状态，提交失败或超时时为 null
+     */
+    private JSONObject upload(String filename, byte[] content) throws IOException, InterruptedException {
+        String boundary = "----rag-loadtest-" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(content.length + 512);
+        body.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"ragTag\"\r\n\r\n" + ragTag + "\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"files\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(content);
+        body.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(target + "/api/v1/rag/file/upload"))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .timeout(Duration.ofMinutes(2))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        JSONObject submitted = JSON.parseObject(httpClient.send(request, HttpResponse.BodyHandlers.ofString()).body());
+        if (!"0000".equals(submitted.getString("code"))) {
+            System.err.println("上传任务提交失败: " + filename + " - " + submitted.getString("info"));
+            return null;
+        }
+        String jobId = submitted.getString("data");
+        long deadline = System.nanoTime() + jobTimeout.toNanos();
+        while (true) {
+            if (System.nanoTime() - deadline > 0) {
+                System.err.println("导入任务超时: " + filename + " - " + jobId);
+                return null;
+            }
+            Thread.sleep(200);
+            HttpRequest query = HttpRequest.newBuilder(URI.create(target + "/api/v1/rag/ingestion/job/query?jobId=" + encode(jobId)))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+            JSONObject job = JSON.parseObject(httpClient.send(query, HttpResponse.BodyHandlers.ofString()).body()).getJSONObject("data");
+            if (job != null && FINISHED_JOB_STATUS.contains(job.getString("status"))) {
+                return job;
+            }
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static class ChatResult {
+        private boolean success;
+        private int deltas;
+        private double firstTokenMs;
+        private double completionMs;
+    }
+
+}
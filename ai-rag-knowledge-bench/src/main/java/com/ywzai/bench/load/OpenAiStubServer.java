@@ -0,0 +1,313 @@
+package com.ywzai.bench.load;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-04
+ * @Description: 本地 OpenAI 兼容桩服务，提供 /v1/chat/completions（流式与非流式）和 /v1/embeddings，
+ * 首 token 延迟、生成速度、向量化延迟和错误注入均可配置，应用通过 spring.ai.openai.base-url 指向本服务即可离线压测。
+ * 启动：java -cp benchmarks.jar com.ywzai.bench.load.OpenAiStubServer --port=18080 --first-token-ms=300 --tokens-per-second=50
+ * @Version: 1.0
+ */
+public class OpenAiStubServer {
+
+    private static final List<String> ANSWER_TOKENS = List.of(
+            "根据", "知识库", "中的", "内容", "，", "检索", "增强", "生成", "会", "先", "找到", "相关", "片段", "，",
+            "再", "交给", "大模型", "作为", "上下文", "。", "向量", "索引", "在", "召回率", "和", "延迟", "之间", "取舍", "。");
+
+    private final int port;
+    /** 首个 token 的延迟及抖动（毫秒） */
+    private final long firstTokenMs;
+    private final long jitterMs;
+    /** 首个 token 之后每秒输出的 token 数 */
+    private final double tokensPerSecond;
+    /** 每个回答的 token 数 */
+    private final int answerTokens;
+    /** 向量化请求的固定延迟和每条输入的附加延迟（毫秒） */
+    private final long embeddingMs;
+    private final double embeddingMsPerInput;
+    /** 未指定 dimensions 时返回的向量维度 */
+    private final int dimensions;
+    /** 返回 500 的比例 */
+    private final double errorRate;
+    /** 返回 429 的比例 */
+    private final double throttleRate;
+    /** 流式回答中途断开的比例 */
+    private final double abortRate;
+
+    private final Random random;
+    private final AtomicLong requestIds = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public OpenAiStubServer(CommandLineArgs args) {
+        this.port = args.getInt("port", 18080);
+        this.firstTokenMs = args.getLong("first-token-ms", 300);
+        this.jitterMs = args.getLong("jitter-ms", 50);
+        this.tokensPerSecond = args.getDouble("tokens-per-second", 50);
+        this.answerTokens = args.getInt("answer-tokens", 200);
+        this.embeddingMs = args.getLong("embedding-ms", 50);
+        this.embeddingMsPerInput = args.getDouble("embedding-ms-per-input", 0.2);
+        this.dimensions = args.getInt("dimensions", 1536);
+        this.errorRate = args.getDouble("error-rate", 0);
+        this.throttleRate = args.getDouble("throttle-rate", 0);
+        this.abortRate = args.getDouble("abort-rate", 0);
+        this.random = new Random(args.getLong("seed", 42));
+    }
+
+    public static void main(String[] args) throws IOException {
+        OpenAiStubServer stub = new OpenAiStubServer(new CommandLineArgs(args));
+        stub.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(stub::stop));
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        // 每个流式回答占用一个线程直到结束
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/v1/chat/completions", exchange -> handle(exchange, this::chat));
+        server.createContext("/v1/embeddings", exchange -> handle(exchange, this::embeddings));
+        server.start();
+        System.out.printf("OpenAI 桩服务已启动: http://localhost:%d，首 token %d±%d ms，%.1f token/s，错误率 %.3f，限流率 %.3f，中断率 %.3f%n",
+                port, firstTokenMs, jitterMs, tokensPerSecond, errorRate, throttleRate, abortRate);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        boolean aborted = false;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, error("method not allowed", "invalid_request_error"));
+                return;
+            }
+            JSONObject request = JSON.parseObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            double roll = nextDouble();
+            if (roll < errorRate) {
+                sendJson(exchange, 500, error("injected server error", "server_error"));
+            } else if (roll < errorRate + throttleRate) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                sendJson(exchange, 429, error("injected rate limit", "rate_limit_exceeded"));
+            } else {
+                handler.handle(exchange, request);
+            }
+        } catch (StreamAbortedException e) {
+            // 关闭 exchange 会写出结束分块，看起来像正常结束；直接抛给 HttpServer，由其关闭底层连接
+            aborted = true;
+            throw e;
+        } catch (IOException e) {
+            // 客户端取消流式请求时写入失败，属于正常情况
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!aborted) {
+                exchange.close();
+            }
+        }
+    }
+
+    private void chat(HttpExchange exchange, JSONObject request) throws IOException, InterruptedException {
+        String model = request.getString("model");
+        String id = "chatcmpl-stub-" + requestIds.incrementAndGet();
+        int promptTokens = estimateTokens(request.getJSONArray("messages"));
+        sleep(firstTokenMs + (jitterMs > 0 ? (long) (nextDouble() * 2 * jitterMs) - jitterMs : 0));
+        if (!request.getBooleanValue("stream")) {
+            StringBuilder answer = new StringBuilder();
+            for (int i = 0; i < answerTokens; i++) {
+                answer.append(ANSWER_TOKENS.get(i % ANSWER_TOKENS.size()));
+            }
+            sleep((long) (answerTokens * 1000 / tokensPerSecond));
+            JSONObject message = new JSONObject(Map.of("role", "assistant", "content", answer.toString()));
+            JSONObject response = completion(id, "chat.completion", model);
+            response.put("choices", List.of(new JSONObject(Map.of("index", 0, "message", message, "finish_reason", "stop"))));
+            response.put("usage", usage(promptTokens, answerTokens));
+            sendJson(exchange, 200, response);
+            return;
+        }
+
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        boolean abort = nextDouble() < abortRate;
+        long intervalNanos = (long) (1_000_000_000L / tokensPerSecond);
+        long next = System.nanoTime();
+        for (int i = 0; i < answerTokens; i++) {
+            if (abort && i == answerTokens / 2) {
+                // 模拟上游中途断开：不发送结束分片和分块结束标记，直接关闭连接
+                throw new StreamAbortedException();
+            }
+            JSONObject delta = new JSONObject();
+            if (i == 0) {
+                delta.put("role", "assistant");
+            }
+            delta.put("content", ANSWER_TOKENS.get(i % ANSWER_TOKENS.size()));
+            writeChunk(out, chunk(id, model, delta, null));
+            next += intervalNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            }
+        }
+        writeChunk(out, chunk(id, model, new JSONObject(), "stop"));
+        JSONObject streamOptions = request.getJSONObject("stream_options");
+        if (streamOptions != null && streamOptions.getBooleanValue("include_usage")) {
+            JSONObject usageChunk = completion(id, "chat.completion.chunk", model);
+            usageChunk.put("choices", List.of());
+            usageChunk.put("usage", usage(promptTokens, answerTokens));
+            writeChunk(out, usageChunk);
+        }
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void embeddings(HttpExchange exchange, JSONObject request) throws IOException, InterruptedException {
+        Object input = request.get("input");
+        List<String> texts = new ArrayList<>();
+        if (input instanceof JSONArray array) {
+            array.forEach(item -> texts.add(String.valueOf(item)));
+        } else {
+            texts.add(String.valueOf(input));
+        }
+        int dims = request.getIntValue("dimensions") > 0 ? request.getIntValue("dimensions") : dimensions;
+        sleep(embeddingMs + (long) (texts.size() * embeddingMsPerInput));
+        List<JSONObject> data = new ArrayList<>(texts.size());
+        int tokens = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            data.add(new JSONObject(Map.of("object", "embedding", "index", i, "embedding", vector(texts.get(i), dims))));
+            tokens += estimateTokens(texts.get(i));
+        }
+        JSONObject response = new JSONObject();
+        response.put("object", "list");
+        response.put("data", data);
+        response.put("model", request.getString("model"));
+        response.put("usage", new JSONObject(Map.of("prompt_tokens", tokens, "total_tokens", tokens)));
+        sendJson(exchange, 200, response);
+    }
+
+    private static JSONObject chunk(String id, String model, JSONObject delta, String finishReason) {
+        JSONObject choice = new JSONObject();
+        choice.put("index", 0);
+        choice.put("delta", delta);
+        choice.put("finish_reason", finishReason);
+        JSONObject chunk = completion(id, "chat.completion.chunk", model);
+        chunk.put("choices", List.of(choice));
+        return chunk;
+    }
+
+    private static JSONObject completion(String id, String object, String model) {
+        JSONObject completion = new JSONObject();
+        completion.put("id", id);
+        completion.put("object", object);
+        completion.put("created", System.currentTimeMillis() / 1000);
+        completion.put("model", model);
+        return completion;
+    }
+
+    private static JSONObject usage(int promptTokens, int completionTokens) {
+        return new JSONObject(Map.of("prompt_tokens", promptTokens, "completion_tokens", completionTokens,
+                "total_tokens", promptTokens + completionTokens));
+    }
+
+    private static JSONObject error(String message, String type) {
+        return new JSONObject(Map.of("error", new JSONObject(Map.of("message", message, "type", type))));
+    }
+
+    /**
+     * 与 FakeEmbeddingModel 相同的确定性单位向量
+     */
+    private static float[] vector(String text, int dims) {
+        SplittableRandom random = new SplittableRandom(text.hashCode());
+        float[] vector = new float[dims];
+        double norm = 0;
+        for (int i = 0; i < dims; i++) {
+            vector[i] = (float) (random.nextDouble() * 2 - 1);
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dims; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static int estimateTokens(JSONArray messages) {
+        int tokens = 0;
+        for (int i = 0; messages != null && i < messages.size(); i++) {
+            tokens += estimateTokens(messages.getJSONObject(i).getString("content"));
+        }
+        return tokens;
+    }
+
+    /**
+     * 粗略估算，中文约每字一个 token，其余字符约每 4 个一个 token，此处只用于填充 usage
+     */
+    private static int estimateTokens(String text) {
+        if (text == null) {
+            return 0;
+        }
+        long cjk = text.codePoints().filter(c -> Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN).count();
+        long others = text.codePointCount(0, text.length()) - cjk;
+        return (int) Math.max(1, cjk + others / 4);
+    }
+
+    private static void writeChunk(OutputStream out, JSONObject chunk) throws IOException {
+        out.write(("data: " + chunk.toJSONString() + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        byte[] bytes = body.toJSONString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    /**
+     * 注入的流式回答中断
+     */
+    private static class StreamAbortedException extends RuntimeException {
+        private StreamAbortedException() {
+            super("injected stream abort", null, false, false);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange, JSONObject request) throws IOException, InterruptedException;
+    }
+
+}
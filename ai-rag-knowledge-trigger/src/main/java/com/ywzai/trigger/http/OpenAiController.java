@@ -1,36 +1,67 @@
 package com.ywzai.trigger.http;
 
+import com.alibaba.fastjson.JSON;
 import com.ywzai.api.IAiService;
+import com.ywzai.api.dto.ChatStreamDoneDTO;
+import com.ywzai.trigger.service.answer.SemanticAnswerCache;
+import com.ywzai.trigger.service.context.ContextAssembler;
+import com.ywzai.trigger.service.memory.ConversationHistoryWriter;
+import com.ywzai.trigger.service.memory.ConversationMemoryService;
+import com.ywzai.trigger.service.metrics.RagMetrics;
+import com.ywzai.trigger.service.retrieval.ChatRetrievalService;
+import com.ywzai.trigger.service.retrieval.RetrievalContext;
+import com.ywzai.trigger.service.retrieval.RetrievalMode;
+import com.ywzai.trigger.service.store.TagMergeMode;
 import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.Usage;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.SystemPromptTemplate;
-import org.springframework.ai.document.Document;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
 
+@Slf4j
 @RestController()
 @CrossOrigin("*")
 @RequestMapping("/api/v1/openai")
 public class OpenAiController implements IAiService {
 
+    private static final String EVENT_DELTA = "delta";
+    private static final String EVENT_DONE = "done";
+    private static final String EVENT_FAIL = "fail";
+
     @Value("${spring.ai.openai.chat.options.model}")
     private String model;
+    /** 精简流式对话的心跳间隔 */
+    @Value("${rag.stream.heartbeat-interval:15s}")
+    private Duration heartbeatInterval;
 
     @Resource
     private OpenAiChatModel openAiChatModel;
     @Resource
-    private PgVectorStore pgVectorStore;
+    private ChatRetrievalService chatRetrievalService;
+    @Resource
+    private ConversationHistoryWriter conversationHistoryWriter;
+    @Resource
+    private ConversationMemoryService conversationMemoryService;
+    @Resource
+    private ContextAssembler contextAssembler;
+    @Resource
+    private RagMetrics ragMetrics;
 
     @RequestMapping(value = "generate", method = RequestMethod.GET)
     @Override
@@ -48,9 +79,68 @@ public class OpenAiController implements IAiService {
     @Override
     public Flux<ChatResponse> generateStreamForMemory(@RequestParam String model,
                                                       @RequestParam String message,
-                                                      @RequestParam(required = false, defaultValue = "") String ragTag,
-                                                      @RequestParam String memoryId) {
+                                                      @RequestParam(required = false) List<String> ragTag,
+                                                      @RequestParam String memoryId,
+                                                      @RequestParam(required = false, defaultValue = "") String retrievalMode,
+                                                      @RequestParam(required = false, defaultValue = "") String tagMerge) {
+        return chat(model, message, ragTag, memoryId, retrievalMode, tagMerge, null);
+    }
 
+    @RequestMapping(value = "generate_stream_delta", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Override
+    public Flux<ServerSentEvent<String>> generateStreamDelta(@RequestParam String model,
+                                                             @RequestParam String message,
+                                                             @RequestParam(required = false) List<String> ragTag,
+                                                             @RequestParam(required = false, defaultValue = "") String memoryId,
+                                                             @RequestParam(required = false, defaultValue = "") String retrievalMode,
+                                                             @RequestParam(required = false, defaultValue = "") String tagMerge) {
+        // 每个订阅单独统计结束原因和用量
+        return Flux.defer(() -> {
+            long start = System.currentTimeMillis();
+            ChatStreamDoneDTO done = ChatStreamDoneDTO.builder().model(model).build();
+            Flux<ServerSentEvent<String>> events = chat(model, message, ragTag, memoryId, retrievalMode, tagMerge, done)
+                    .concatMap(response -> {
+                        Usage usage = response.getMetadata().getUsage();
+                        if (usage != null && usage.getTotalTokens() != null && usage.getTotalTokens() > 0) {
+                            done.setPromptTokens(usage.getPromptTokens());
+                            done.setCompletionTokens(usage.getCompletionTokens());
+                            done.setTotalTokens(usage.getTotalTokens());
+                        }
+                        Generation generation = response.getResult();
+                        if (generation == null) {
+                            return Flux.empty();
+                        }
+                        if (generation.getMetadata() != null && StringUtils.isNotBlank(generation.getMetadata().getFinishReason())) {
+                            done.setFinishReason(generation.getMetadata().getFinishReason());
+                        }
+                        String text = generation.getOutput().getText();
+                        // 以 JSON 发送：Spring 写出的 "data:" 后没有空格，EventSource 会去掉数据开头的一个空格，直接发送文本会丢失 token 前的空格
+                        return StringUtils.isEmpty(text) ? Flux.empty() : Flux.just(ServerSentEvent.builder(JSON.toJSONString(Map.of("t", text))).event(EVENT_DELTA).build());
+                    })
+                    .concatWith(Mono.fromSupplier(() -> {
+                        done.setElapsedMs(System.currentTimeMillis() - start);
+                        return ServerSentEvent.builder(JSON.toJSONString(done)).event(EVENT_DONE).build();
+                    }))
+                    .onErrorResume(e -> {
+                        log.error("流式对话失败 memoryId: {}", memoryId, e);
+                        return Mono.just(ServerSentEvent.builder(StringUtils.defaultIfBlank(e.getMessage(), "对话失败")).event(EVENT_FAIL).build());
+                    });
+            // 检索或首个 token 较慢时心跳保持连接；客户端断开后写入心跳失败，也能尽快发现并取消订阅
+            Flux<ServerSentEvent<String>> heartbeats = Flux.interval(heartbeatInterval, heartbeatInterval)
+                    .map(i -> ServerSentEvent.<String>builder().comment("heartbeat").build());
+            return Flux.merge(events, heartbeats)
+                    .takeUntil(event -> EVENT_DONE.equals(event.event()) || EVENT_FAIL.equals(event.event()))
+                    .doOnCancel(() -> log.info("客户端已断开，取消生成 memoryId: {}", memoryId));
+        });
+    }
+
+    /**
+     * 检索上下文并生成回答，两个流式接口共用
+     *
+     * @param done 非 null 时记录回答是否来自缓存
+     */
+    private Flux<ChatResponse> chat(String model, String message, List<String> ragTag, String memoryId,
+                                    String retrievalMode, String tagMerge, ChatStreamDoneDTO done) {
         String SYSTEM_PROMPT_RAG = """
                 Use the information from the DOCUMENTS section to provide accurate answers but act as if you knew this information innately.
                 If unsure, simply state that you don't know.
@@ -68,42 +158,73 @@ public class OpenAiController implements IAiService {
                     {historyForContext}
                 现在用户输入新的消息，请根据历史对话和当前问题生成回答。
                 """;
-        // 指定文档搜索
-        SearchRequest request = SearchRequest.builder()
-                .query(message)
-                .topK(5)
-                .filterExpression("knowledge == '" + ragTag + "'")
-                .build();
-
-        List<Document> documentsForRag = pgVectorStore.similaritySearch(request);
-        String documentCollectors = documentsForRag.stream().map(Document::getText).collect(Collectors.joining());
-        Message ragMessage = new SystemPromptTemplate(SYSTEM_PROMPT_RAG).createMessage(Map.of("documentsForRag", documentCollectors));
-        SearchRequest historyRequest = SearchRequest.builder()
-                .query(message)
-                .topK(5)
-                .filterExpression("historychat == '" + memoryId + "'")
-                .build();
-        List<Document> documentsForHistory = pgVectorStore.similaritySearch(historyRequest);
-        String documentCollectorsForHistory = documentsForHistory.stream().map(Document::getText).collect(Collectors.joining());
-        Message ragMessageForHistory = new SystemPromptTemplate(SYSTEM_PROMPT_HISTORY).createMessage(Map.of("historyForContext", documentCollectorsForHistory));
-        List<Message> messages = new ArrayList<>();
-        messages.add(new UserMessage(message));
-        messages.add(ragMessage);
-        messages.add(ragMessageForHistory);
-        saveUserInput(memoryId, message);
-        return openAiChatModel.stream(new Prompt(
-                messages,
-                OpenAiChatOptions.builder()
-                        .model(model)
-                        .build()
-        ));
+        // 知识库检索与历史检索并行执行在检索线程池上，结果都返回后再开始生成
+        // retrievalMode 可选 VECTOR / HYBRID，为空时使用 rag.retrieval.mode 配置
+        // 无法识别的取值回退到默认配置，不在组装 Flux 时抛异常
+        RetrievalMode mode = parseMode(RetrievalMode.class, "retrievalMode", retrievalMode);
+        TagMergeMode mergeMode = parseMode(TagMergeMode.class, "tagMerge", tagMerge);
+        List<String> ragTags = ragTag == null ? List.of() : ragTag.stream().filter(tag -> !tag.isBlank()).map(String::trim).distinct().toList();
+        // 首个 token 和完整回答的耗时从订阅开始计算，包含检索
+        return Flux.defer(() -> {
+            long startNanos = System.nanoTime();
+            return chatRetrievalService.retrieve(message, ragTags, memoryId, mode, mergeMode, model)
+                .flatMapMany(context -> {
+                    // 首轮问答中相似问题已有回答时直接回放，不调用大模型
+                    SemanticAnswerCache.Lookup answerLookup = context.getAnswerLookup();
+                    if (answerLookup.isHit()) {
+                        saveUserInput(memoryId, message, context);
+                        if (done != null) {
+                            done.setCached(true);
+                        }
+                        return ragMetrics.recordStream(conversationMemoryService.recordAnswer(memoryId, answerLookup.replay()), startNanos, true);
+                    }
+                    List<Message> messages = ragMetrics.chatTimer(RagMetrics.CHAT_PROMPT_BUILD).record(() -> {
+                        // 去重、合并、重排后按 token 预算装入提示词
+                        String documentCollectors = contextAssembler.assembleKnowledge(message, context.getRagDocuments());
+                        Message ragMessage = new SystemPromptTemplate(SYSTEM_PROMPT_RAG).createMessage(Map.of("documentsForRag", documentCollectors));
+                        // 会话记忆（摘要 + 最近消息）在前，向量检索到的更早相关消息在后
+                        String documentCollectorsForHistory = context.getMemoryContext() + contextAssembler.assembleHistory(message, context.getHistoryDocuments());
+                        Message ragMessageForHistory = new SystemPromptTemplate(SYSTEM_PROMPT_HISTORY).createMessage(Map.of("historyForContext", documentCollectorsForHistory));
+                        List<Message> promptMessages = new ArrayList<>();
+                        promptMessages.add(new UserMessage(message));
+                        promptMessages.add(ragMessage);
+                        promptMessages.add(ragMessageForHistory);
+                        return promptMessages;
+                    });
+                    saveUserInput(memoryId, message, context);
+                    return ragMetrics.recordStream(conversationMemoryService.recordAnswer(memoryId, answerLookup.record(openAiChatModel.stream(new Prompt(
+                            messages,
+                            OpenAiChatOptions.builder()
+                                    .model(model)
+                                    // 最后一个分片返回 token 用量，用于结束事件和生成速度统计
+                                    .streamUsage(true)
+                                    .build()
+                    )))), startNanos, false);
+                });
+        });
+    }
+
+    /**
+     * 忽略大小写解析模式参数，为空或无法识别时返回 null，由下游使用默认配置
+     */
+    private static <E extends Enum<E>> E parseMode(Class<E> type, String name, String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.warn("无法识别的参数 {}={}，使用默认配置", name, value);
+            return null;
+        }
     }
-    public void saveUserInput(String memoryId, String message) {
-        String documentId = UUID.randomUUID().toString();
-        Document doc = new Document(documentId,message,Map.of("historychat",memoryId));
 
-        // 2. 存入 PgVectorStore（内部会调用 EmbeddingClient 生成向量）
-        pgVectorStore.add(List.of(doc));
+    public void saveUserInput(String memoryId, String message, RetrievalContext context) {
+        // 写入会话记忆；开启向量历史时再交给批量写入器异步存入向量库，复用本轮已计算好的问题向量，不阻塞对话流
+        conversationMemoryService.append(memoryId, ConversationMemoryService.ROLE_USER, message);
+        if (conversationMemoryService.isVectorHistoryEnabled()) {
+            conversationHistoryWriter.submit(memoryId, message, context.getQueryEmbedding());
+        }
     }
 
 }
\ No newline at end of file
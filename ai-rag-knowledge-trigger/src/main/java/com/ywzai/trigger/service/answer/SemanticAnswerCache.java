@@ -0,0 +1,248 @@
+package com.ywzai.trigger.service.answer;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.ywzai.trigger.service.store.KnowledgeVersionStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-28
+ * @Description: 语义回答缓存，按知识库保存完整生成的回答及其问题向量，新问题与已缓存问题的余弦相似度达到阈值时直接回放回答，
+ * 不再调用大模型；回答与会话历史无关地共享，默认关闭，知识库版本号变化后缓存失效
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class SemanticAnswerCache {
+
+    private static final String FINISH_REASON_STOP = "STOP";
+
+    @Resource
+    private KnowledgeVersionStore knowledgeVersionStore;
+
+    /** 是否启用语义回答缓存 */
+    @Value("${rag.answer-cache.enabled:false}")
+    private boolean enabled;
+    /** 命中所需的最小余弦相似度 */
+    @Value("${rag.answer-cache.similarity-threshold:0.95}")
+    private double similarityThreshold;
+    /** 每个知识库缓存的最大回答数，超出后淘汰最久未命中的回答 */
+    @Value("${rag.answer-cache.max-entries-per-tag:500}")
+    private long maxEntriesPerTag;
+    /** 回答的缓存时间（单位：分钟） */
+    @Value("${rag.answer-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+    /** 超过该长度的回答不缓存 */
+    @Value("${rag.answer-cache.max-answer-chars:20000}")
+    private int maxAnswerChars;
+    /** 最多缓存的知识库标签组合数，超出后淘汰最久未访问的组合及其全部回答 */
+    @Value("${rag.answer-cache.max-tag-combinations:200}")
+    private long maxTagCombinations;
+
+    /** 知识库标签（多个时排序后以逗号拼接） -> 该知识库下的回答 */
+    private Cache<String, Cache<String, CachedAnswer>> answersByTag;
+
+    @PostConstruct
+    public void init() {
+        // 组合内的回答在写入 ttl 后过期，组合超过 ttl 未访问时其中已无有效回答，一并淘汰
+        answersByTag = CacheBuilder.newBuilder()
+                .maximumSize(maxTagCombinations)
+                .expireAfterAccess(ttlMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 不使用缓存时的查找结果：不命中，也不记录回答
+     */
+    public Lookup none() {
+        return new Lookup(null, null, null, null, null);
+    }
+
+    /**
+     * 查找相似问题的回答，应在调用大模型之前执行。
+     * 回答依赖会话上下文，只应在没有会话记忆和历史对话的首轮问答中使用
+     *
+     * @param ragTags        知识库标签，多个知识库的组合单独缓存
+     * @param model          对话模型
+     * @param queryEmbedding 问题向量
+     * @return 查找结果，未命中时可用于记录本次生成的回答
+     */
+    public Lookup lookup(List<String> ragTags, String model, float[] queryEmbedding) {
+        if (!enabled || ragTags.isEmpty() || queryEmbedding == null) {
+            return none();
+        }
+        List<String> sorted = ragTags.stream().sorted().toList();
+        String ragTag = String.join(",", sorted);
+        String version;
+        try {
+            version = sorted.stream()
+                    .map(tag -> String.valueOf(knowledgeVersionStore.current(tag)))
+                    .collect(Collectors.joining(","));
+        } catch (Exception e) {
+            log.warn("获取知识库 {} 的版本号失败，跳过语义回答缓存", ragTag, e);
+            return none();
+        }
+        Cache<String, CachedAnswer> answers;
+        try {
+            answers = answersByTag.get(ragTag, () -> CacheBuilder.newBuilder()
+                    .maximumSize(maxEntriesPerTag)
+                    .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+                    .build());
+        } catch (ExecutionException e) {
+            log.warn("创建知识库 {} 的语义回答缓存失败，跳过语义回答缓存", ragTag, e);
+            return none();
+        }
+        double queryNorm = norm(queryEmbedding);
+        String bestId = null;
+        double bestSimilarity = similarityThreshold;
+        List<String> stale = new ArrayList<>();
+        for (Map.Entry<String, CachedAnswer> entry : answers.asMap().entrySet()) {
+            CachedAnswer answer = entry.getValue();
+            if (!answer.version.equals(version)) {
+                stale.add(entry.getKey());
+                continue;
+            }
+            if (!answer.model.equals(model) || answer.embedding.length != queryEmbedding.length) {
+                continue;
+            }
+            double similarity = dot(answer.embedding, queryEmbedding) / (answer.norm * queryNorm);
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                bestId = entry.getKey();
+            }
+        }
+        answers.invalidateAll(stale);
+        // 通过 getIfPresent 访问，更新该回答的最近使用时间
+        CachedAnswer hit = bestId == null ? null : answers.getIfPresent(bestId);
+        if (hit != null) {
+            log.info("语义回答缓存命中，知识库: {}，相似度: {}", ragTag, String.format("%.4f", bestSimilarity));
+        }
+        return new Lookup(hit, answers, version, model, queryEmbedding);
+    }
+
+    /**
+     * 一次查找的结果
+     */
+    public class Lookup {
+
+        private final CachedAnswer hit;
+        private final Cache<String, CachedAnswer> answers;
+        private final String version;
+        private final String model;
+        private final float[] queryEmbedding;
+
+        private Lookup(CachedAnswer hit, Cache<String, CachedAnswer> answers, String version, String model, float[] queryEmbedding) {
+            this.hit = hit;
+            this.answers = answers;
+            this.version = version;
+            this.model = model;
+            this.queryEmbedding = queryEmbedding;
+        }
+
+        public boolean isHit() {
+            return hit != null;
+        }
+
+        /**
+         * 按原始的分片回放回答，最后一片带上结束原因，前端据此结束流
+         */
+        public Flux<ChatResponse> replay() {
+            List<String> chunks = hit.chunks;
+            return Flux.range(0, chunks.size())
+                    .map(i -> {
+                        ChatGenerationMetadata metadata = i == chunks.size() - 1
+                                ? ChatGenerationMetadata.builder().finishReason(FINISH_REASON_STOP).build()
+                                : ChatGenerationMetadata.NULL;
+                        return new ChatResponse(List.of(new Generation(new AssistantMessage(chunks.get(i)), metadata)));
+                    });
+        }
+
+        /**
+         * 透传大模型的流式回答，正常结束且结束原因为 STOP 时写入缓存，取消或出错的回答不缓存
+         */
+        public Flux<ChatResponse> record(Flux<ChatResponse> stream) {
+            if (answers == null) {
+                return stream;
+            }
+            List<String> chunks = new ArrayList<>();
+            int[] length = {0};
+            String[] finishReason = {null};
+            return stream
+                    .doOnNext(response -> {
+                        Generation generation = response.getResult();
+                        if (generation == null) {
+                            return;
+                        }
+                        String text = generation.getOutput().getText();
+                        if (text != null && !text.isEmpty()) {
+                            chunks.add(text);
+                            length[0] += text.length();
+                        }
+                        if (generation.getMetadata() != null && generation.getMetadata().getFinishReason() != null) {
+                            finishReason[0] = generation.getMetadata().getFinishReason();
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (!FINISH_REASON_STOP.equalsIgnoreCase(finishReason[0]) || chunks.isEmpty() || length[0] > maxAnswerChars) {
+                            return;
+                        }
+                        answers.put(UUID.randomUUID().toString(), new CachedAnswer(model, version, queryEmbedding, List.copyOf(chunks)));
+                    });
+        }
+
+    }
+
+    private static final class CachedAnswer {
+
+        private final String model;
+        /** 生成回答时的知识库版本号，多个知识库时按标签排序后拼接 */
+        private final String version;
+        private final float[] embedding;
+        private final double norm;
+        /** 大模型流式返回的分片 */
+        private final List<String> chunks;
+
+        private CachedAnswer(String model, String version, float[] embedding, List<String> chunks) {
+            this.model = model;
+            this.version = version;
+            this.embedding = embedding;
+            this.norm = norm(embedding);
+            this.chunks = chunks;
+        }
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static double norm(float[] vector) {
+        return Math.sqrt(dot(vector, vector));
+    }
+
+}
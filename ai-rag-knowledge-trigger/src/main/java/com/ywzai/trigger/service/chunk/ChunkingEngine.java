@@ -0,0 +1,225 @@
+package com.ywzai.trigger.service.chunk;
+
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-25
+ * @Description: 分块引擎，按来源选择切分器得到结构单元，再把相邻单元合并到目标 token 数，超长单元按行、句子逐级拆开
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class ChunkingEngine {
+
+    private static final String SENTENCE_ENDINGS = "。！？；";
+    private static final String LATIN_SENTENCE_ENDINGS = ".!?;";
+
+    /** 按 @Order 排序，SentenceChunker 兜底 */
+    @Resource
+    private List<DocumentChunker> documentChunkers;
+
+    /** 片段去掉空白后少于该字符数时丢弃，如只有一个右括号的片段 */
+    @Value("${rag.chunker.min-chunk-chars:5}")
+    private int minChunkChars;
+    /** 超过该字符数的文本，结构单元分组后并行合并 */
+    @Value("${rag.chunker.parallel-threshold-chars:131072}")
+    private int parallelThresholdChars;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    /**
+     * 是否有按结构切分的切分器支持该来源，此时可直接读取原始文本，不必经过 Tika
+     */
+    public boolean isStructured(String source) {
+        return !(select(source) instanceof SentenceChunker);
+    }
+
+    /**
+     * 切分文档，每个片段复制原文档的元数据
+     *
+     * @param document 文档
+     * @param source   文件名或仓库内相对路径，用于选择切分器
+     * @return 片段
+     */
+    public List<Document> split(Document document, String source) {
+        String text = document.getText();
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        DocumentChunker chunker = select(source);
+        List<String> segments = chunker.segment(text, source);
+
+        List<String> chunks;
+        if (text.length() > parallelThresholdChars) {
+            // 按字符数把结构单元分成若干组，各组独立合并，组边界处不做重叠
+            List<List<String>> groups = new ArrayList<>();
+            List<String> group = new ArrayList<>();
+            int groupChars = 0;
+            for (String segment : segments) {
+                if (!group.isEmpty() && groupChars + segment.length() > parallelThresholdChars / 4) {
+                    groups.add(group);
+                    group = new ArrayList<>();
+                    groupChars = 0;
+                }
+                group.add(segment);
+                groupChars += segment.length();
+            }
+            groups.add(group);
+            chunks = groups.parallelStream()
+                    .flatMap(g -> pack(g, chunker.targetTokens(), chunker.overlapTokens()).stream())
+                    .toList();
+        } else {
+            chunks = pack(segments, chunker.targetTokens(), chunker.overlapTokens());
+        }
+
+        List<Document> documents = new ArrayList<>(chunks.size());
+        for (String chunk : chunks) {
+            String content = chunk.strip();
+            if (content.length() >= minChunkChars) {
+                documents.add(new Document(content, new HashMap<>(document.getMetadata())));
+            }
+        }
+        log.debug("{} 使用 {} 切分，结构单元 {} 个，生成片段 {} 个", source, chunker.getClass().getSimpleName(), segments.size(), documents.size());
+        return documents;
+    }
+
+    private DocumentChunker select(String source) {
+        for (DocumentChunker chunker : documentChunkers) {
+            if (source != null && chunker.supports(source)) {
+                return chunker;
+            }
+        }
+        return documentChunkers.get(documentChunkers.size() - 1);
+    }
+
+    /**
+     * 贪心合并相邻单元，超过目标 token 数时输出一个片段，并把末尾不超过重叠 token 数的单元带入下一个片段
+     */
+    private List<String> pack(List<String> segments, int targetTokens, int overlapTokens) {
+        List<String> chunks = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        List<Integer> currentTokens = new ArrayList<>();
+        int total = 0;
+        int carried = 0;
+        for (String segment : segments) {
+            for (String piece : fit(segment, targetTokens)) {
+                int tokens = tokenCountEstimator.estimate(piece);
+                if (current.size() > carried && total + tokens > targetTokens) {
+                    chunks.add(String.join("", current));
+                    List<String> nextText = new ArrayList<>();
+                    List<Integer> nextTokens = new ArrayList<>();
+                    int overlap = 0;
+                    for (int i = current.size() - 1; i >= 0 && overlap + currentTokens.get(i) <= overlapTokens; i--) {
+                        overlap += currentTokens.get(i);
+                        nextText.add(0, current.get(i));
+                        nextTokens.add(0, currentTokens.get(i));
+                    }
+                    current = nextText;
+                    currentTokens = nextTokens;
+                    total = overlap;
+                    carried = current.size();
+                }
+                current.add(piece);
+                currentTokens.add(tokens);
+                total += tokens;
+            }
+        }
+        if (current.size() > carried) {
+            chunks.add(String.join("", current));
+        }
+        return chunks;
+    }
+
+    /**
+     * 超出目标 token 数的单元依次按行、句子拆开，仍超出时按字符比例硬切
+     */
+    private List<String> fit(String segment, int targetTokens) {
+        int tokens = tokenCountEstimator.estimate(segment);
+        if (tokens <= targetTokens) {
+            return List.of(segment);
+        }
+        List<String> parts = splitLines(segment);
+        if (parts.size() <= 1) {
+            parts = splitSentences(segment);
+        }
+        if (parts.size() <= 1) {
+            int size = Math.max(1, (int) ((long) segment.length() * targetTokens / tokens));
+            List<String> pieces = new ArrayList<>();
+            int start = 0;
+            while (start < segment.length()) {
+                int end = Math.min(segment.length(), start + size);
+                // 不在代理对中间切开
+                if (end < segment.length() && Character.isHighSurrogate(segment.charAt(end - 1))) {
+                    end++;
+                }
+                pieces.add(segment.substring(start, end));
+                start = end;
+            }
+            return pieces;
+        }
+        List<String> pieces = new ArrayList<>();
+        for (String part : parts) {
+            pieces.addAll(fit(part, targetTokens));
+        }
+        return pieces;
+    }
+
+    /**
+     * 按行切分，保留换行符
+     */
+    static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    /**
+     * 按句子切分，中文句末标点后直接断开，英文句末标点后需跟空白，避免切开小数和缩写
+     */
+    static List<String> splitSentences(String text) {
+        List<String> sentences = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            char next = i + 1 < text.length() ? text.charAt(i + 1) : '\n';
+            boolean end = SENTENCE_ENDINGS.indexOf(c) >= 0
+                    || (LATIN_SENTENCE_ENDINGS.indexOf(c) >= 0 && Character.isWhitespace(next))
+                    || (c == '\n' && next == '\n');
+            if (end) {
+                // 句末的空白归入当前句子
+                int stop = i + 1;
+                while (stop < text.length() && Character.isWhitespace(text.charAt(stop))) {
+                    stop++;
+                }
+                sentences.add(text.substring(start, stop));
+                start = stop;
+                i = stop - 1;
+            }
+        }
+        if (start < text.length()) {
+            sentences.add(text.substring(start));
+        }
+        return sentences;
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.ywzai.trigger.service.chunk;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-25
+ * @Description: 源代码切分，在类成员和顶层声明的边界处断开，方法体内部不切分，注释和注解跟随其后的声明
+ * @Version: 1.0
+ */
+@Order(1)
+@Component
+public class CodeChunker implements DocumentChunker {
+
+    private static final Set<String> BRACE_LANGUAGES = Set.of(
+            "java", "kt", "kts", "scala", "groovy", "go", "js", "jsx", "mjs", "ts", "tsx",
+            "c", "h", "cc", "cpp", "hpp", "cs", "rs", "php", "swift", "dart");
+    private static final Set<String> INDENT_LANGUAGES = Set.of("py");
+
+    private static final Pattern PYTHON_DECLARATION = Pattern.compile("^(async\\s+def|def|class)\\b.*|^@.*");
+
+    @Value("${rag.chunker.code.target-tokens:600}")
+    private int targetTokens;
+    @Value("${rag.chunker.code.overlap-tokens:0}")
+    private int overlapTokens;
+
+    @Override
+    public boolean supports(String source) {
+        String extension = DocumentChunker.extension(source);
+        return BRACE_LANGUAGES.contains(extension) || INDENT_LANGUAGES.contains(extension);
+    }
+
+    @Override
+    public List<String> segment(String text, String source) {
+        return segment(text, !INDENT_LANGUAGES.contains(DocumentChunker.extension(source)));
+    }
+
+    private List<String> segment(String text, boolean braces) {
+        List<String> segments = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        BraceState state = new BraceState();
+        boolean previousBlank = true;
+        boolean previousClosed = false;
+        boolean previousDecorator = false;
+        for (String line : ChunkingEngine.splitLines(text)) {
+            String trimmed = line.strip();
+            boolean boundary;
+            if (braces) {
+                // 类成员或顶层声明：深度不超过 1，且前一行是空行或上一条语句、代码块已结束
+                boundary = state.depth <= 1 && !state.inBlockComment && (previousBlank || previousClosed);
+            } else {
+                boundary = indentOf(line) <= 4 && PYTHON_DECLARATION.matcher(trimmed).matches() && !previousDecorator;
+            }
+            if (boundary && !trimmed.isEmpty() && current.length() > 0) {
+                segments.add(current.toString());
+                current.setLength(0);
+            }
+            current.append(line);
+
+            if (braces) {
+                state.scan(line);
+                previousClosed = state.depth <= 1 && (trimmed.endsWith("}") || trimmed.endsWith(";"));
+            }
+            previousBlank = trimmed.isEmpty();
+            if (!trimmed.isEmpty()) {
+                previousDecorator = trimmed.startsWith("@");
+            }
+        }
+        if (current.length() > 0) {
+            segments.add(current.toString());
+        }
+        return segments;
+    }
+
+    @Override
+    public int targetTokens() {
+        return targetTokens;
+    }
+
+    @Override
+    public int overlapTokens() {
+        return overlapTokens;
+    }
+
+    private static int indentOf(String line) {
+        int indent = 0;
+        while (indent < line.length() && (line.charAt(indent) == ' ' || line.charAt(indent) == '\t')) {
+            indent += line.charAt(indent) == '\t' ? 4 : 1;
+        }
+        return indent;
+    }
+
+    /**
+     * 大括号深度，忽略字符串和注释中的括号
+     */
+    private static class BraceState {
+        private int depth;
+        private boolean inBlockComment;
+
+        private void scan(String line) {
+            char quote = 0;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                char next = i + 1 < line.length() ? line.charAt(i + 1) : 0;
+                if (inBlockComment) {
+                    if (c == '*' && next == '/') {
+                        inBlockComment = false;
+                        i++;
+                    }
+                } else if (quote != 0) {
+                    if (c == '\\') {
+                        i++;
+                    } else if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '/' && next == '/') {
+                    return;
+                } else if (c == '/' && next == '*') {
+                    inBlockComment = true;
+                    i++;
+                } else if (c == '"' || c == '\'' || c == '`') {
+                    quote = c;
+                } else if (c == '{') {
+                    depth++;
+                } else if (c == '}') {
+                    depth = Math.max(0, depth - 1);
+                }
+            }
+        }
+    }
+
+}
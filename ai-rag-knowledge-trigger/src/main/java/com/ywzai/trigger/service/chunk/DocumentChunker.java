@@ -0,0 +1,40 @@
+package com.ywzai.trigger.service.chunk;
+
+import java.util.List;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-25
+ * @Description: 按文件类型切分文本的结构单元（类与方法、章节、句子），相邻单元由 ChunkingEngine 按 token 目标合并
+ * @Version: 1.0
+ */
+public interface DocumentChunker {
+
+    /**
+     * 是否处理该来源
+     *
+     * @param source 文件名或仓库内相对路径
+     */
+    boolean supports(String source);
+
+    /**
+     * 切分为按原顺序排列的结构单元，拼接后即为片段内容
+     *
+     * @param text   文本
+     * @param source 文件名或仓库内相对路径
+     */
+    List<String> segment(String text, String source);
+
+    /** 每个片段的目标 token 数 */
+    int targetTokens();
+
+    /** 相邻片段重叠的 token 数 */
+    int overlapTokens();
+
+    static String extension(String source) {
+        int slash = Math.max(source.lastIndexOf('/'), source.lastIndexOf('\\'));
+        int dot = source.lastIndexOf('.');
+        return dot > slash ? source.substring(dot + 1).toLowerCase() : "";
+    }
+
+}
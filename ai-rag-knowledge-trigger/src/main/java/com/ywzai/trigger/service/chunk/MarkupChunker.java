@@ -0,0 +1,110 @@
+package com.ywzai.trigger.service.chunk;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-25
+ * @Description: Markdown 与 HTML 按标题切分章节，Markdown 代码块内的 # 不视为标题，HTML 切分后去掉标签
+ * @Version: 1.0
+ */
+@Order(2)
+@Component
+public class MarkupChunker implements DocumentChunker {
+
+    private static final Set<String> MARKDOWN = Set.of("md", "markdown", "mdx");
+    private static final Set<String> HTML = Set.of("html", "htm", "xhtml");
+
+    private static final Pattern MARKDOWN_HEADING = Pattern.compile("^ {0,3}#{1,6}(\\s.*)?$", Pattern.DOTALL);
+    private static final Pattern HTML_NOISE = Pattern.compile("(?is)<(script|style|noscript)\\b.*?</\\1>|<!--.*?-->");
+    private static final Pattern HTML_HEADING = Pattern.compile("(?i)<h[1-6][\\s>]");
+    private static final Pattern HTML_BLOCK_END = Pattern.compile("(?i)</(p|div|li|tr|h[1-6]|pre|section|article)>|<br\\s*/?>");
+    private static final Pattern HTML_TAG = Pattern.compile("<[^>]+>");
+    private static final Pattern BLANK_LINES = Pattern.compile("\\n[ \\t]*(\\n[ \\t]*)+");
+
+    @Value("${rag.chunker.markup.target-tokens:800}")
+    private int targetTokens;
+    @Value("${rag.chunker.markup.overlap-tokens:0}")
+    private int overlapTokens;
+
+    @Override
+    public boolean supports(String source) {
+        String extension = DocumentChunker.extension(source);
+        return MARKDOWN.contains(extension) || HTML.contains(extension);
+    }
+
+    @Override
+    public List<String> segment(String text, String source) {
+        // 经 Tika 解析过的 HTML 已是纯文本，按 Markdown 的规则处理即可
+        if (HTML.contains(DocumentChunker.extension(source)) && HTML_TAG.matcher(text).find()) {
+            return segmentHtml(text);
+        }
+        return segmentMarkdown(text);
+    }
+
+    @Override
+    public int targetTokens() {
+        return targetTokens;
+    }
+
+    @Override
+    public int overlapTokens() {
+        return overlapTokens;
+    }
+
+    private List<String> segmentMarkdown(String text) {
+        List<String> segments = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inFence = false;
+        for (String line : ChunkingEngine.splitLines(text)) {
+            String trimmed = line.strip();
+            if (trimmed.startsWith("```") || trimmed.startsWith("~~~")) {
+                inFence = !inFence;
+            }
+            if (!inFence && MARKDOWN_HEADING.matcher(line).matches() && current.length() > 0) {
+                segments.add(current.toString());
+                current.setLength(0);
+            }
+            current.append(line);
+        }
+        if (current.length() > 0) {
+            segments.add(current.toString());
+        }
+        return segments;
+    }
+
+    private List<String> segmentHtml(String html) {
+        String cleaned = HTML_NOISE.matcher(html).replaceAll("");
+        List<String> segments = new ArrayList<>();
+        Matcher heading = HTML_HEADING.matcher(cleaned);
+        int start = 0;
+        while (heading.find()) {
+            if (heading.start() > start) {
+                addHtmlSection(segments, cleaned.substring(start, heading.start()));
+            }
+            start = heading.start();
+        }
+        addHtmlSection(segments, cleaned.substring(start));
+        return segments;
+    }
+
+    private static void addHtmlSection(List<String> segments, String section) {
+        String text = HTML_BLOCK_END.matcher(section).replaceAll("\n");
+        text = HTML_TAG.matcher(text).replaceAll("");
+        text = text.replace("&nbsp;", " ").replace("&lt;", "<").replace("&gt;", ">")
+                .replace("&quot;", "\"").replace("&#39;", "'").replace("&amp;", "&");
+        text = BLANK_LINES.matcher(text).replaceAll("\n\n").strip();
+        if (!text.isEmpty()) {
+            segments.add(text + "\n\n");
+        }
+    }
+
+}
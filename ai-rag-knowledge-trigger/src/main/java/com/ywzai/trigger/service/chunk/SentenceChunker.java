@@ -0,0 +1,45 @@
+package com.ywzai.trigger.service.chunk;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-25
+ * @Description: 普通文本按句子切分，作为其他切分器都不支持时的兜底
+ * @Version: 1.0
+ */
+@Order(Ordered.LOWEST_PRECEDENCE)
+@Component
+public class SentenceChunker implements DocumentChunker {
+
+    @Value("${rag.chunker.text.target-tokens:800}")
+    private int targetTokens;
+    @Value("${rag.chunker.text.overlap-tokens:64}")
+    private int overlapTokens;
+
+    @Override
+    public boolean supports(String source) {
+        return true;
+    }
+
+    @Override
+    public List<String> segment(String text, String source) {
+        return ChunkingEngine.splitSentences(text);
+    }
+
+    @Override
+    public int targetTokens() {
+        return targetTokens;
+    }
+
+    @Override
+    public int overlapTokens() {
+        return overlapTokens;
+    }
+
+}
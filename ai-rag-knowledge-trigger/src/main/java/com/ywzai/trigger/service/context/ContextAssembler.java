@@ -0,0 +1,241 @@
+package com.ywzai.trigger.service.context;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-29
+ * @Description: 上下文组装，对多取的候选片段去重、合并同一来源中首尾重叠的相邻片段、重排，再按 token 预算装入提示词，
+ * 每个片段前标注来源
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class ContextAssembler {
+
+    private static final String SEPARATOR = "\n\n";
+    private static final String HISTORY_SEPARATOR = "\n---\n";
+    /** 查找首尾重叠时只检查前一个片段末尾的这些字符，片段重叠部分不会超过该长度 */
+    private static final int MAX_OVERLAP_CHARS = 4000;
+    private static final int SHINGLE_SIZE = 3;
+
+    @Resource
+    private List<ContextScorer> contextScorers;
+
+    /** 重排打分器名称：lexical 或 retrieval */
+    @Value("${rag.context.scorer:lexical}")
+    private String scorerName;
+    /** 知识库片段的 token 预算 */
+    @Value("${rag.context.token-budget:2000}")
+    private int tokenBudget;
+    /** 历史对话的 token 预算 */
+    @Value("${rag.context.history-token-budget:800}")
+    private int historyTokenBudget;
+    /** 两个片段字符三元组的 Jaccard 相似度达到该值时视为重复 */
+    @Value("${rag.context.duplicate-threshold:0.9}")
+    private double duplicateThreshold;
+    /** 同一来源的两个片段首尾重叠至少该字符数时合并为一个片段 */
+    @Value("${rag.context.min-merge-overlap-chars:20}")
+    private int minMergeOverlapChars;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private ContextScorer scorer;
+
+    @PostConstruct
+    public void init() {
+        scorer = contextScorers.stream()
+                .filter(candidate -> candidate.name().equalsIgnoreCase(scorerName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("未知的重排打分器: " + scorerName));
+    }
+
+    /**
+     * 组装知识库上下文，每个片段前标注来源
+     */
+    public String assembleKnowledge(String query, List<Document> candidates) {
+        List<Document> ranked = rank(query, merge(deduplicate(candidates)));
+        StringBuilder context = new StringBuilder();
+        int usedTokens = 0;
+        int packed = 0;
+        for (Document document : ranked) {
+            String source = sourceOf(document);
+            String block = "[来源: " + (source == null ? "未知" : source) + "]\n" + document.getText().trim();
+            int tokens = tokenCountEstimator.estimate(block);
+            if (usedTokens + tokens > tokenBudget) {
+                if (packed > 0) {
+                    continue;
+                }
+                // 最相关的片段单独就超过预算时按比例截断，保证至少有一段上下文
+                block = block.substring(0, (int) ((long) block.length() * tokenBudget / tokens));
+                tokens = tokenCountEstimator.estimate(block);
+            }
+            context.append(packed == 0 ? "" : SEPARATOR).append(block);
+            usedTokens += tokens;
+            packed++;
+        }
+        log.debug("知识库上下文：候选 {} 条，装入 {} 条，约 {} tokens", candidates.size(), packed, usedTokens);
+        return context.toString();
+    }
+
+    /**
+     * 组装历史对话上下文，只去重和按预算截取，不合并
+     */
+    public String assembleHistory(String query, List<Document> candidates) {
+        List<Document> ranked = rank(query, deduplicate(candidates));
+        StringJoiner context = new StringJoiner(HISTORY_SEPARATOR);
+        int usedTokens = 0;
+        for (Document document : ranked) {
+            String text = document.getText().trim();
+            int tokens = tokenCountEstimator.estimate(text);
+            if (usedTokens + tokens > historyTokenBudget) {
+                continue;
+            }
+            context.add(text);
+            usedTokens += tokens;
+        }
+        return context.toString();
+    }
+
+    /**
+     * 按检索得分从高到低保留，与已保留片段重复或被其包含的片段丢弃
+     */
+    List<Document> deduplicate(List<Document> candidates) {
+        List<Document> sorted = candidates.stream()
+                .filter(document -> document.getText() != null && !document.getText().isBlank())
+                .sorted(Comparator.comparingDouble(ContextAssembler::retrievalScore).reversed())
+                .toList();
+        List<Document> kept = new ArrayList<>();
+        List<String> keptTexts = new ArrayList<>();
+        List<Set<String>> keptShingles = new ArrayList<>();
+        for (Document document : sorted) {
+            String text = normalize(document.getText());
+            Set<String> shingles = shingles(text);
+            boolean duplicate = false;
+            for (int i = 0; i < kept.size() && !duplicate; i++) {
+                duplicate = keptTexts.get(i).contains(text) || jaccard(shingles, keptShingles.get(i)) >= duplicateThreshold;
+            }
+            if (!duplicate) {
+                kept.add(document);
+                keptTexts.add(text);
+                keptShingles.add(shingles);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * 同一来源中前一片段的末尾与后一片段的开头重叠时（切分时的重叠部分），拼接为一个片段，得分取较高者
+     */
+    List<Document> merge(List<Document> candidates) {
+        List<Document> merged = new ArrayList<>(candidates);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < merged.size() && !changed; i++) {
+                for (int j = 0; j < merged.size() && !changed; j++) {
+                    Document first = merged.get(i);
+                    Document second = merged.get(j);
+                    if (i == j || !Objects.equals(sourceOf(first), sourceOf(second)) || sourceOf(first) == null) {
+                        continue;
+                    }
+                    int overlap = overlap(first.getText(), second.getText(), minMergeOverlapChars);
+                    if (overlap == 0) {
+                        continue;
+                    }
+                    Document combined = Document.builder()
+                            .id(first.getId())
+                            .text(first.getText() + second.getText().substring(overlap))
+                            .metadata(first.getMetadata())
+                            .score(Math.max(retrievalScore(first), retrievalScore(second)))
+                            .build();
+                    merged.set(Math.min(i, j), combined);
+                    merged.remove(Math.max(i, j));
+                    changed = true;
+                }
+            }
+        }
+        return merged;
+    }
+
+    private List<Document> rank(String query, List<Document> candidates) {
+        if (candidates.size() <= 1) {
+            return candidates;
+        }
+        double[] scores = scorer.score(query, candidates);
+        Integer[] order = new Integer[candidates.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+        List<Document> ranked = new ArrayList<>(order.length);
+        for (Integer index : order) {
+            ranked.add(candidates.get(index));
+        }
+        return ranked;
+    }
+
+    /**
+     * first 的后缀与 second 的前缀相同的最大长度，不足 minOverlap 时返回 0
+     */
+    static int overlap(String first, String second, int minOverlap) {
+        if (minOverlap <= 0 || second.length() < minOverlap) {
+            return 0;
+        }
+        String probe = second.substring(0, minOverlap);
+        int position = first.indexOf(probe, Math.max(0, first.length() - Math.min(second.length(), MAX_OVERLAP_CHARS)));
+        // 越靠前的位置重叠越长
+        while (position >= 0) {
+            int length = first.length() - position;
+            if (first.regionMatches(position, second, 0, length)) {
+                return length;
+            }
+            position = first.indexOf(probe, position + 1);
+        }
+        return 0;
+    }
+
+    private static String sourceOf(Document document) {
+        Object source = document.getMetadata().get("source");
+        if (source == null) {
+            source = document.getMetadata().get("filename");
+        }
+        return source == null ? null : source.toString();
+    }
+
+    private static double retrievalScore(Document document) {
+        return document.getScore() == null ? 0 : document.getScore();
+    }
+
+    private static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ");
+    }
+
+    private static Set<String> shingles(String text) {
+        Set<String> shingles = new HashSet<>();
+        for (int i = 0; i + SHINGLE_SIZE <= text.length(); i++) {
+            shingles.add(text.substring(i, i + SHINGLE_SIZE));
+        }
+        if (shingles.isEmpty()) {
+            shingles.add(text);
+        }
+        return shingles;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        long intersection = smaller.stream().filter(larger::contains).count();
+        return intersection / (double) (a.size() + b.size() - intersection);
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.ywzai.trigger.service.context;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-29
+ * @Description: 上下文候选片段的重排打分器，通过 rag.context.scorer 按名称选择，可替换为交叉编码器等外部重排服务
+ * @Version: 1.0
+ */
+public interface ContextScorer {
+
+    /** 配置中使用的名称 */
+    String name();
+
+    /**
+     * 为候选片段打分
+     *
+     * @param query      用户问题
+     * @param candidates 候选片段，score 为检索得分
+     * @return 与候选片段一一对应的相关性得分，越大越相关
+     */
+    double[] score(String query, List<Document> candidates);
+
+}
@@ -0,0 +1,90 @@
+package com.ywzai.trigger.service.context;
+
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-29
+ * @Description: 本地重排：检索得分与问题词项覆盖率加权，问题中的英文单词、标识符和中文二元组在片段中出现得越多得分越高，
+ * 在没有重排模型时代替交叉编码器
+ * @Version: 1.0
+ */
+@Component
+public class LexicalOverlapScorer implements ContextScorer {
+
+    /** 词项覆盖率的权重，其余为归一化后的检索得分 */
+    @Value("${rag.context.lexical.overlap-weight:0.4}")
+    private double overlapWeight;
+
+    @Override
+    public String name() {
+        return "lexical";
+    }
+
+    @Override
+    public double[] score(String query, List<Document> candidates) {
+        Set<String> queryTerms = terms(query);
+        double maxScore = candidates.stream()
+                .mapToDouble(document -> document.getScore() == null ? 0 : document.getScore())
+                .max()
+                .orElse(0);
+        double[] scores = new double[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            Document document = candidates.get(i);
+            double retrieval = maxScore > 0 && document.getScore() != null ? document.getScore() / maxScore : 0;
+            double overlap = 0;
+            if (!queryTerms.isEmpty()) {
+                Set<String> documentTerms = terms(document.getText());
+                overlap = queryTerms.stream().filter(documentTerms::contains).count() / (double) queryTerms.size();
+            }
+            scores[i] = (1 - overlapWeight) * retrieval + overlapWeight * overlap;
+        }
+        return scores;
+    }
+
+    /**
+     * 连续的字母、数字、下划线作为一个词项，中文按相邻两个字切分
+     */
+    static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        StringBuilder word = new StringBuilder();
+        char previousHan = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                addWord(terms, word);
+                if (previousHan != 0) {
+                    terms.add("" + previousHan + c);
+                }
+                previousHan = c;
+                continue;
+            }
+            previousHan = 0;
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                word.append(Character.toLowerCase(c));
+            } else {
+                addWord(terms, word);
+            }
+        }
+        addWord(terms, word);
+        return terms;
+    }
+
+    private static void addWord(Set<String> terms, StringBuilder word) {
+        if (word.length() > 1) {
+            terms.add(word.toString().toLowerCase(Locale.ROOT));
+        }
+        word.setLength(0);
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.ywzai.trigger.service.context;
+
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-29
+ * @Description: 直接使用检索得分，不做重排
+ * @Version: 1.0
+ */
+@Component
+public class RetrievalScoreScorer implements ContextScorer {
+
+    @Override
+    public String name() {
+        return "retrieval";
+    }
+
+    @Override
+    public double[] score(String query, List<Document> candidates) {
+        return candidates.stream()
+                .mapToDouble(document -> document.getScore() == null ? 0 : document.getScore())
+                .toArray();
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.ywzai.trigger.service.embedding;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-23
+ * @Description: 向量化请求调度器，按 token 预算把文本打包成尽量大的批次，全局限制在途请求数，并按原顺序拼回结果
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class EmbeddingDispatcher implements EmbeddingModel {
+
+    @Resource
+    private EmbeddingModel openAiEmbeddingModel;
+
+    /** 单个请求的 token 上限，OpenAI 单次请求总 token 上限为 300000，默认留出余量 */
+    @Value("${rag.embedding.dispatcher.max-batch-tokens:200000}")
+    private int maxBatchTokens;
+    /** 单个请求的文本条数上限，OpenAI 上限为 2048 */
+    @Value("${rag.embedding.dispatcher.max-batch-inputs:2048}")
+    private int maxBatchInputs;
+    /** 全局同时在途的向量化请求数 */
+    @Value("${rag.embedding.dispatcher.max-in-flight:8}")
+    private int maxInFlight;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private ExecutorService dispatchExecutor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        dispatchExecutor = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "rag-embedding-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        dispatchExecutor.shutdown();
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<float[]> outputs = dispatch(request.getInstructions(), request);
+        List<Embedding> embeddings = new ArrayList<>(outputs.size());
+        for (int i = 0; i < outputs.size(); i++) {
+            embeddings.add(new Embedding(outputs.get(i), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        return dispatch(texts, new EmbeddingRequest(texts, EmbeddingOptionsBuilder.builder().build()));
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return openAiEmbeddingModel.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return openAiEmbeddingModel.dimensions();
+    }
+
+    private List<float[]> dispatch(List<String> texts, EmbeddingRequest request) {
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+        List<List<String>> batches = pack(texts);
+        List<CompletableFuture<List<float[]>>> futures = new ArrayList<>(batches.size());
+        for (List<String> batch : batches) {
+            futures.add(CompletableFuture.supplyAsync(() -> embedBatch(batch, request), dispatchExecutor));
+        }
+
+        // 按提交顺序拼接，保证与输入一一对应
+        List<float[]> outputs = new ArrayList<>(texts.size());
+        try {
+            for (CompletableFuture<List<float[]>> future : futures) {
+                outputs.addAll(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(false));
+            throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : e;
+        }
+        log.debug("向量化 {} 条文本，拆分为 {} 个请求", texts.size(), batches.size());
+        return outputs;
+    }
+
+    private List<float[]> embedBatch(List<String> batch, EmbeddingRequest request) {
+        EmbeddingResponse response = openAiEmbeddingModel.call(new EmbeddingRequest(batch, request.getOptions()));
+        List<float[]> outputs = new ArrayList<>(batch.size());
+        response.getResults().forEach(embedding -> outputs.add(embedding.getOutput()));
+        if (outputs.size() != batch.size()) {
+            throw new IllegalStateException("向量化结果数量与请求不一致: " + outputs.size() + " != " + batch.size());
+        }
+        return outputs;
+    }
+
+    /**
+     * 按 token 预算和条数上限贪心打包，超出预算的单条文本独占一个批次
+     */
+    private List<List<String>> pack(List<String> texts) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int currentTokens = 0;
+        for (String text : texts) {
+            int tokens = tokenCountEstimator.estimate(text);
+            if (!current.isEmpty() && (currentTokens + tokens > maxBatchTokens || current.size() >= maxBatchInputs)) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(text);
+            currentTokens += tokens;
+        }
+        batches.add(current);
+        return batches;
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.ywzai.trigger.service.embedding;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-20
+ * @Description: 用户问题向量化服务，一轮对话只计算一次向量，并缓存最近的问题向量
+ * @Version: 1.0
+ */
+@Slf4j
+@Service
+public class QueryEmbeddingService {
+
+    @Resource
+    private EmbeddingModel openAiEmbeddingModel;
+
+    /** 缓存的最大问题条数 */
+    @Value("${rag.embedding.query-cache.max-size:2000}")
+    private long maxSize;
+    /** 缓存过期时间（单位：分钟），超过该时间未访问的问题向量将被淘汰 */
+    @Value("${rag.embedding.query-cache.expire-minutes:30}")
+    private long expireMinutes;
+
+    private Cache<String, float[]> queryEmbeddingCache;
+
+    @PostConstruct
+    public void init() {
+        queryEmbeddingCache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(expireMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 获取问题的向量，命中缓存时不再调用向量模型
+     *
+     * @param query 用户问题
+     * @return 问题向量
+     */
+    public float[] embed(String query) {
+        String key = normalize(query);
+        try {
+            return queryEmbeddingCache.get(key, () -> {
+                log.debug("问题向量缓存未命中，调用向量模型: {}", key);
+                return openAiEmbeddingModel.embed(key);
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new RuntimeException("问题向量化失败: " + query, e.getCause());
+        }
+    }
+
+    private String normalize(String query) {
+        return query == null ? "" : query.trim();
+    }
+
+}
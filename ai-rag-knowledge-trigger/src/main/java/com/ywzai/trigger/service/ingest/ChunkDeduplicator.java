@@ -0,0 +1,113 @@
+package com.ywzai.trigger.service.ingest;
+
+import com.ywzai.trigger.service.store.PgVectorRepository;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-24
+ * @Description: 片段去重，片段ID由 知识库+来源+内容哈希 决定，重复导入时已存在的片段不再向量化，来源中已消失的片段被删除
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class ChunkDeduplicator {
+
+    public static final String METADATA_KNOWLEDGE = "knowledge";
+    public static final String METADATA_SOURCE = "source";
+    public static final String METADATA_CONTENT_HASH = "contentHash";
+    /** 代码库片段的仓库地址，上传文件的片段没有该字段 */
+    public static final String METADATA_REPO_URL = "repoUrl";
+
+    @Resource
+    private PgVectorRepository pgVectorRepository;
+
+    /**
+     * 打开一个来源的去重范围，加载该来源已入库的片段ID
+     *
+     * @param knowledge 知识库标签
+     * @param source    来源（上传文件名或仓库内相对路径）
+     * @param repoUrl   代码库地址，上传文件为 null
+     * @return 去重范围
+     */
+    public Scope open(String knowledge, String source, String repoUrl) {
+        return new Scope(knowledge, source, pgVectorRepository.findIdsBySource(knowledge, source, repoUrl));
+    }
+
+    public static String contentHash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 不可用", e);
+        }
+    }
+
+    public static class Scope {
+        private final String knowledge;
+        private final String source;
+        private final Set<String> existingIds;
+        private final Set<String> seenIds = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger skipped = new AtomicInteger(0);
+
+        private Scope(String knowledge, String source, Set<String> existingIds) {
+            this.knowledge = knowledge;
+            this.source = source;
+            this.existingIds = existingIds;
+        }
+
+        /**
+         * 按内容生成稳定的片段ID，并记录内容哈希
+         */
+        public Document identify(Document chunk) {
+            String hash = contentHash(chunk.getText());
+            String id = UUID.nameUUIDFromBytes((knowledge + "\n" + source + "\n" + hash).getBytes(StandardCharsets.UTF_8)).toString();
+            Document identified = chunk.mutate().id(id).build();
+            identified.getMetadata().put(METADATA_CONTENT_HASH, hash);
+            return identified;
+        }
+
+        /**
+         * 是否需要向量化并写入：已入库或本次已出现过的片段跳过
+         */
+        public boolean shouldWrite(Document identified) {
+            boolean firstSeen = seenIds.add(identified.getId());
+            if (!firstSeen || existingIds.contains(identified.getId())) {
+                skipped.incrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * 本次导入中已不存在的旧片段
+         */
+        public Set<String> staleIds() {
+            Set<String> stale = new HashSet<>(existingIds);
+            stale.removeAll(seenIds);
+            return stale;
+        }
+
+        public int getSkipped() {
+            return skipped.get();
+        }
+
+        public String getSource() {
+            return source;
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.ywzai.trigger.service.ingest;
+
+import com.ywzai.trigger.service.embedding.EmbeddingDispatcher;
+import com.ywzai.trigger.service.metrics.RagMetrics;
+import com.ywzai.trigger.service.store.PgVectorBulkLoader;
+import com.ywzai.trigger.service.store.PgVectorRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuples;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-22
+ * @Description: 分割→向量化→入库的流式导入流水线，各阶段独立并发，由最慢的阶段通过背压控制上游的读取速度
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class DocumentIngestionPipeline {
+
+    @Resource
+    private EmbeddingDispatcher embeddingDispatcher;
+    @Resource
+    private PgVectorRepository pgVectorRepository;
+    @Resource
+    private ChunkDeduplicator chunkDeduplicator;
+    @Resource
+    private RagMetrics ragMetrics;
+
+    /** 每批向量化并入库的文本片段数，调度器会再按 token 预算拆分 */
+    @Value("${rag.ingestion.pipeline.batch-size:256}")
+    private int batchSize;
+    /** 单个文件同时进行中的向量化批次数，实际请求数由调度器全局限制 */
+    @Value("${rag.ingestion.pipeline.embed-concurrency:2}")
+    private int embedConcurrency;
+    /** 单个文件同时进行中的入库批次数 */
+    @Value("${rag.ingestion.pipeline.store-concurrency:2}")
+    private int storeConcurrency;
+    /** 向量化线程总数，所有导入任务共享 */
+    @Value("${rag.ingestion.pipeline.embed-threads:16}")
+    private int embedThreads;
+    /** 入库线程总数，所有导入任务共享 */
+    @Value("${rag.ingestion.pipeline.store-threads:8}")
+    private int storeThreads;
+
+    private Scheduler embedScheduler;
+    private Scheduler storeScheduler;
+
+    @PostConstruct
+    public void init() {
+        embedScheduler = Schedulers.newBoundedElastic(embedThreads, Integer.MAX_VALUE, "rag-ingestion-embed");
+        storeScheduler = Schedulers.newBoundedElastic(storeThreads, Integer.MAX_VALUE, "rag-ingestion-store");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        embedScheduler.dispose();
+        storeScheduler.dispose();
+    }
+
+    /**
+     * 执行流水线，阻塞直到所有片段入库完成，只能在导入线程中调用
+     *
+     * @param chunks   已分割的文本片段，按需惰性生成
+     * @param metadata 追加到每个片段上的元数据
+     * @param source   来源名称，用于日志
+     * @return 入库的片段数
+     */
+    public int ingest(Flux<Document> chunks, Map<String, Object> metadata, String source) throws SQLException {
+        return ingest(chunks, metadata, source, null);
+    }
+
+    /**
+     * 执行流水线，指定批量导入会话时通过 COPY 写入，否则逐批 INSERT。
+     * 元数据中带有 knowledge 和 source 时按内容去重：已入库的片段跳过向量化，来源中已消失的片段被删除
+     *
+     * @param chunks      已分割的文本片段，按需惰性生成
+     * @param metadata    追加到每个片段上的元数据
+     * @param source      来源名称，用于日志
+     * @param bulkSession 批量导入会话，由调用方负责提交，可为空
+     * @return 本次来源的片段总数（含跳过的片段）
+     */
+    public int ingest(Flux<Document> chunks, Map<String, Object> metadata, String source, PgVectorBulkLoader.BulkLoadSession bulkSession) throws SQLException {
+        Object knowledge = metadata.get(ChunkDeduplicator.METADATA_KNOWLEDGE);
+        Object sourceKey = metadata.get(ChunkDeduplicator.METADATA_SOURCE);
+        Object repoUrl = metadata.get(ChunkDeduplicator.METADATA_REPO_URL);
+        ChunkDeduplicator.Scope scope = knowledge != null && sourceKey != null
+                ? chunkDeduplicator.open(knowledge.toString(), sourceKey.toString(), repoUrl == null ? null : repoUrl.toString())
+                : null;
+
+        AtomicInteger batchIndex = new AtomicInteger(0);
+        // 批量导入只有一个暂存文件写入流，入库阶段串行
+        int concurrency = bulkSession == null ? storeConcurrency : 1;
+        Integer stored = chunks
+                .map(document -> {
+                    document.getMetadata().putAll(metadata);
+                    return scope == null ? document : scope.identify(document);
+                })
+                .filter(document -> scope == null || scope.shouldWrite(document))
+                .buffer(batchSize)
+                .map(batch -> {
+                    String currentBatchIndex = String.valueOf(batchIndex.getAndIncrement());
+                    batch.forEach(document -> document.getMetadata().put("batchIndex", currentBatchIndex));
+                    return batch;
+                })
+                // 向量化阶段：保持批次顺序，同时最多 embedConcurrency 个批次在途
+                .flatMapSequential(batch -> Mono.fromCallable(() -> Tuples.of(batch, ragMetrics.recordIngest(RagMetrics.INGEST_EMBED, batch, () -> embed(batch))))
+                        .subscribeOn(embedScheduler), embedConcurrency, 1)
+                // 入库阶段：入库慢时不再向上游请求新的批次
+                .flatMap(tuple -> Mono.fromCallable(() -> ragMetrics.recordIngest(RagMetrics.INGEST_STORE, tuple.getT1(), () -> {
+                    if (bulkSession == null) {
+                        pgVectorRepository.add(tuple.getT1(), tuple.getT2());
+                    } else {
+                        bulkSession.write(tuple.getT1(), tuple.getT2());
+                    }
+                    ragMetrics.countStoredChunks(tuple.getT1());
+                    return tuple.getT1().size();
+                })).subscribeOn(storeScheduler), concurrency, 1)
+                .doOnNext(size -> log.debug("{} 批次入库完成，片段数: {}", source, size))
+                .reduce(0, Integer::sum)
+                .block();
+        int written = stored == null ? 0 : stored;
+        if (scope == null) {
+            return written;
+        }
+
+        // 删除来源中已不存在的旧片段，批量导入时与新数据在同一事务中生效
+        Set<String> staleIds = scope.staleIds();
+        if (bulkSession == null) {
+            pgVectorRepository.deleteByIds(knowledge.toString(), staleIds);
+        } else {
+            bulkSession.deleteOnCommit(knowledge.toString(), staleIds);
+        }
+        log.info("{} 导入完成，新写入 {} 个片段，跳过未变化片段 {} 个，删除过期片段 {} 个", source, written, scope.getSkipped(), staleIds.size());
+        return written + scope.getSkipped();
+    }
+
+    private List<float[]> embed(List<Document> batch) {
+        return embeddingDispatcher.embed(batch.stream().map(Document::getText).toList());
+    }
+
+}
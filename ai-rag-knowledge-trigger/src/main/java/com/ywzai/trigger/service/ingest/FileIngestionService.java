@@ -0,0 +1,96 @@
+package com.ywzai.trigger.service.ingest;
+
+import com.ywzai.trigger.service.chunk.ChunkingEngine;
+import com.ywzai.trigger.service.metrics.RagMetrics;
+import com.ywzai.trigger.service.store.PgVectorBulkLoader;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-21
+ * @Description: 单个文件的解析、分割与向量入库
+ * @Version: 1.0
+ */
+@Slf4j
+@Service
+public class FileIngestionService {
+
+    @Resource
+    private ChunkingEngine chunkingEngine;
+    @Resource
+    private StreamingDocumentReader streamingDocumentReader;
+    @Resource
+    private DocumentIngestionPipeline documentIngestionPipeline;
+    @Resource
+    private PgVectorBulkLoader pgVectorBulkLoader;
+    @Resource
+    private RagMetrics ragMetrics;
+
+    /** 超过该大小（字节）的文件使用 COPY 批量导入，小于等于 0 表示关闭 */
+    @Value("${rag.ingestion.bulk-load.min-file-bytes:10485760}")
+    private long bulkLoadMinFileBytes;
+
+    /**
+     * 使用Spring AI流式处理单个文件
+     * 
+     * @param file 已落盘的上传文件
+     * @param ragTag 知识库标签
+     * @return 处理的文本片段数量
+     * @throws Exception 文件处理异常
+     */
+    public int processFileWithSpringAI(IngestionFile file, String ragTag) throws Exception {
+        log.info("开始流式处理文件: {}, 大小: {} MB, 文件类型: {}", 
+                file.getFilename(), 
+                file.getSize() / (1024.0 * 1024.0),
+                file.getContentType());
+        
+        try {
+            // 边读边分割：文件按窗口读取，每个窗口按文件类型单独分割，内存占用与文件大小无关
+            String fileType = RagMetrics.fileType(file.getFilename());
+            Timer splitTimer = ragMetrics.ingestTimer(RagMetrics.INGEST_SPLIT, ragTag, fileType);
+            Flux<Document> chunks = streamingDocumentReader.read(file.getPath(), file.getFilename(), ragMetrics.ingestTimer(RagMetrics.INGEST_PARSE, ragTag, fileType))
+                    .concatMapIterable(window -> splitTimer.record(() -> chunkingEngine.split(window, file.getFilename())), 1);
+
+            Map<String, Object> metadata = new HashMap<>();
+            metadata.put("knowledge", ragTag);
+            metadata.put("filename", file.getFilename());
+            // 同一知识库下按文件名去重，重复上传时只向量化变化的片段
+            metadata.put(ChunkDeduplicator.METADATA_SOURCE, file.getFilename());
+            metadata.put("fileSize", String.valueOf(file.getSize()));
+            metadata.put("uploadTime", String.valueOf(System.currentTimeMillis()));
+
+            // 向量化和入库由流水线按最慢阶段的速度推进，不再固定休眠
+            int segments;
+            if (bulkLoadMinFileBytes > 0 && file.getSize() >= bulkLoadMinFileBytes) {
+                log.info("文件 {} 使用 COPY 批量导入", file.getFilename());
+                try (PgVectorBulkLoader.BulkLoadSession session = pgVectorBulkLoader.open()) {
+                    segments = documentIngestionPipeline.ingest(chunks, metadata, file.getFilename(), session);
+                    session.commit();
+                }
+            } else {
+                segments = documentIngestionPipeline.ingest(chunks, metadata, file.getFilename());
+            }
+
+            if (segments == 0) {
+                log.warn("文件 {} 解析后无内容，可能是不支持的格式或空文件", file.getFilename());
+                return 0;
+            }
+            log.info("文件 {} 流式处理完成，总计 {} 个文本片段", file.getFilename(), segments);
+            return segments;
+            
+        } catch (Exception e) {
+            log.error("流式处理文件失败: {}", file.getFilename(), e);
+            throw new Exception("文件处理失败: " + file.getFilename(), e);
+        }
+    }
+
+}
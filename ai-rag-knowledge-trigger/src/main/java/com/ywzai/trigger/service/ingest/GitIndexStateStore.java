@@ -0,0 +1,53 @@
+package com.ywzai.trigger.service.ingest;
+
+import jakarta.annotation.Resource;
+import org.redisson.api.RLock;
+import org.redisson.api.RMap;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Component;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-24
+ * @Description: 代码库索引状态，按知识库记录每个仓库最后一次完整索引的提交，片段ID按 知识库+相对路径 保存在向量表中
+ * @Version: 1.0
+ */
+@Component
+public class GitIndexStateStore {
+
+    private static final String LAST_COMMIT_KEY_PREFIX = "rag:git:last-commit:";
+    private static final String LOCK_KEY_PREFIX = "rag:git:lock:";
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    /**
+     * 最后一次完整索引的提交，未索引过时返回 null
+     */
+    public String getLastCommit(String knowledge, String repoUrl) {
+        return lastCommits(knowledge).get(repoUrl);
+    }
+
+    public void saveLastCommit(String knowledge, String repoUrl, String commitId) {
+        lastCommits(knowledge).put(repoUrl, commitId);
+    }
+
+    /**
+     * 知识库被删除后清空索引状态，下次分析时全量索引
+     */
+    public void clear(String knowledge) {
+        lastCommits(knowledge).delete();
+    }
+
+    /**
+     * 同一知识库的代码库索引任务互斥，避免并发任务基于同一个旧提交重复计算差异，或同名仓库的任务同时改写同一知识库
+     */
+    public RLock getLock(String knowledge) {
+        return redissonClient.getLock(LOCK_KEY_PREFIX + knowledge);
+    }
+
+    private RMap<String, String> lastCommits(String knowledge) {
+        return redissonClient.getMap(LAST_COMMIT_KEY_PREFIX + knowledge);
+    }
+
+}
@@ -0,0 +1,492 @@
+package com.ywzai.trigger.service.ingest;
+
+import com.google.common.hash.Hashing;
+import com.ywzai.trigger.service.chunk.ChunkingEngine;
+import com.ywzai.trigger.service.metrics.RagMetrics;
+import com.ywzai.trigger.service.store.PgVectorBulkLoader;
+import com.ywzai.trigger.service.store.PgVectorRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.errors.RevisionSyntaxException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.redisson.api.RLock;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.reader.tika.TikaDocumentReader;
+import org.springframework.core.io.PathResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-21
+ * @Description: 代码库克隆、解析与向量入库，每个仓库维护一个裸镜像增量拉取，每个任务只把需要解析的文件检出到独立目录，按提交差异增量索引，文件并行解析后合并成大批次入库
+ * @Version: 1.0
+ */
+@Slf4j
+@Service
+public class GitRepositoryIngestionService {
+
+    /** 每个任务的检出目录，只包含本次需要解析的文件 */
+    private static final String CLONE_ROOT_PATH = "./git-cloned-repo";
+    private static final int MAX_RETRIES = 3;
+
+    @Resource
+    private ChunkingEngine chunkingEngine;
+    @Resource
+    private DocumentIngestionPipeline documentIngestionPipeline;
+    @Resource
+    private PgVectorBulkLoader pgVectorBulkLoader;
+    @Resource
+    private PgVectorRepository pgVectorRepository;
+    @Resource
+    private GitIndexStateStore gitIndexStateStore;
+    @Resource
+    private RepositoryFileFilter repositoryFileFilter;
+    @Resource
+    private ChunkDeduplicator chunkDeduplicator;
+    @Resource
+    private RagMetrics ragMetrics;
+
+    /** 代码库是否使用 COPY 批量导入，整个仓库在一个会话内写入后统一合并 */
+    @Value("${rag.ingestion.bulk-load.git-enabled:true}")
+    private boolean bulkLoadEnabled;
+    /** 同一知识库已有代码库任务在分析时的最长等待时间（单位：秒） */
+    @Value("${rag.ingestion.git.lock-wait-seconds:600}")
+    private long lockWaitSeconds;
+    /** 每个仓库一个裸镜像，跨任务复用，后续任务只拉取增量对象 */
+    @Value("${rag.ingestion.git.mirror-dir:./git-mirror-repo}")
+    private String mirrorDir;
+    /** 并行解析文件的线程数，小于等于 0 时使用 CPU 核数 */
+    @Value("${rag.ingestion.git.parse-threads:0}")
+    private int parseThreads;
+
+    private int parallelism;
+    private ForkJoinPool parsePool;
+    private Scheduler parseScheduler;
+
+    @PostConstruct
+    public void init() {
+        parallelism = parseThreads > 0 ? parseThreads : Runtime.getRuntime().availableProcessors();
+        parsePool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("rag-git-parse-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        parseScheduler = Schedulers.fromExecutorService(parsePool, "rag-git-parse");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        parseScheduler.dispose();
+        parsePool.shutdown();
+    }
+
+    /**
+     * 拉取代码库镜像并增量解析入库：已索引过的仓库只处理上次索引提交之后新增、修改和删除的文件
+     *
+     * @param repoUrl 仓库地址
+     * @param job     导入任务，ragTag 为仓库名称
+     */
+    public void ingest(String repoUrl, IngestionJob job) throws IOException {
+        // 数据按知识库存放，同名的不同仓库写入同一个知识库，按知识库加锁
+        RLock lock = gitIndexStateStore.getLock(job.getRagTag());
+        try {
+            if (!lock.tryLock(lockWaitSeconds, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("知识库 " + job.getRagTag() + " 正在被其他代码库任务分析，请稍后重试: " + repoUrl);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("线程被中断", e);
+        }
+        try {
+            ingestLocked(repoUrl, job);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ingestLocked(String repoUrl, IngestionJob job) throws IOException {
+        Path root = Paths.get(CLONE_ROOT_PATH, job.getJobId());
+        String repoProjectName = job.getRagTag();
+        log.info("检出路径：{}", root.toAbsolutePath());
+
+        Git git = openMirror(repoUrl);
+        PgVectorBulkLoader.BulkLoadSession bulkSession = null;
+        try {
+            Repository repository = git.getRepository();
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head == null) {
+                log.info("{} 仓库中还没有提交", repoProjectName);
+                return;
+            }
+            String lastCommit = gitIndexStateStore.getLastCommit(repoProjectName, repoUrl);
+            if (head.name().equals(lastCommit)) {
+                log.info("{} 自上次索引 {} 以来没有新的提交", repoProjectName, lastCommit);
+                return;
+            }
+
+            IndexPlan plan = lastCommit == null ? null : diff(git, lastCommit, head);
+            if (plan == null) {
+                log.info("{} 全量索引，上次索引提交: {}", repoProjectName, lastCommit);
+                plan = fullPlan(repository, head, repoUrl, repoProjectName);
+            } else {
+                log.info("{} 增量索引 {}..{}，变更文件 {} 个，删除文件 {} 个",
+                        repoProjectName, lastCommit, head.name(), plan.changedPaths.size(), plan.deletedPaths.size());
+            }
+            checkout(repository, head, plan.changedPaths, root);
+
+            bulkSession = bulkLoadEnabled ? pgVectorBulkLoader.open() : null;
+            // 解析和分割在并行池中按文件进行，结果汇成一条流，由流水线合并成大批次向量化入库
+            Queue<String> rejectedPaths = new ConcurrentLinkedQueue<>();
+            Set<String> staleIds = ConcurrentHashMap.newKeySet();
+            Flux<Document> chunks = Flux.fromIterable(plan.changedPaths)
+                    .flatMap(source -> Mono.fromCallable(() -> parseFile(root, source, repoUrl, repoProjectName, job, rejectedPaths, staleIds))
+                            .subscribeOn(parseScheduler), parallelism)
+                    .flatMapIterable(pending -> pending);
+            int written = documentIngestionPipeline.ingest(chunks, Map.of(), repoProjectName, bulkSession);
+
+            // 被删除的文件和不再符合过滤规则的文件，删除其全部片段
+            List<String> removedPaths = new ArrayList<>(plan.deletedPaths);
+            removedPaths.addAll(rejectedPaths);
+            for (String source : removedPaths) {
+                staleIds.addAll(pgVectorRepository.findIdsBySource(repoProjectName, source, repoUrl));
+            }
+            if (bulkSession != null) {
+                bulkSession.deleteOnCommit(repoProjectName, staleIds);
+            } else {
+                pgVectorRepository.deleteByIds(repoProjectName, staleIds);
+            }
+            log.info("{} 解析文件 {} 个，跳过文件 {} 个，新写入片段 {} 个，删除片段 {} 个",
+                    repoProjectName, job.getTotalTasks().get(), rejectedPaths.size(), written, staleIds.size());
+            if (bulkSession != null) {
+                bulkSession.commit();
+            }
+
+            // 有文件失败时不推进索引提交，下次从同一提交重新计算差异，未变化的片段由去重跳过
+            if (job.getFailedTasks().get() == 0) {
+                gitIndexStateStore.saveLastCommit(repoProjectName, repoUrl, head.name());
+            }
+        } catch (SQLException e) {
+            throw new IOException("代码库批量导入失败: " + repoUrl, e);
+        } finally {
+            closeQuietly(bulkSession);
+            git.close();
+            FileUtils.deleteDirectory(root.toFile());
+        }
+
+        log.info("遍历解析路径，上传完成:{}", repoUrl);
+    }
+
+    /**
+     * 打开仓库的裸镜像并拉取最新提交，镜像不存在或已损坏时重新克隆，调用方需持有该仓库所属知识库的锁
+     */
+    private Git openMirror(String repoUrl) throws IOException {
+        File directory = mirrorDirectory(repoUrl);
+        if (new File(directory, Constants.HEAD).isFile()) {
+            Git git = null;
+            try {
+                git = Git.open(directory);
+                Git mirror = git;
+                withRetry(repoUrl, "拉取", () -> mirror.fetch()
+                        .setRemote(Constants.DEFAULT_REMOTE_NAME)
+                        .setRemoveDeletedRefs(true)
+                        .setTimeout(600)
+                        .call());
+                log.info("已拉取镜像仓库：{}", directory.getAbsolutePath());
+                return git;
+            } catch (RepositoryNotFoundException e) {
+                log.warn("镜像仓库已损坏，重新克隆: {}", directory.getAbsolutePath(), e);
+            } catch (IOException | RuntimeException e) {
+                if (git != null) {
+                    git.close();
+                }
+                throw e;
+            }
+        }
+        FileUtils.deleteDirectory(directory);
+        log.info("克隆镜像仓库：{}", directory.getAbsolutePath());
+        try {
+            return withRetry(repoUrl, "克隆", () -> Git.cloneRepository()
+                    .setURI(repoUrl)
+                    .setDirectory(directory)
+                    .setMirror(true)
+                    .setTimeout(600) // 10分钟超时
+                    .call());
+        } catch (RuntimeException e) {
+            // 清理不完整的镜像，下次重新克隆
+            try {
+                FileUtils.deleteDirectory(directory);
+            } catch (IOException cleanupException) {
+                log.warn("清理不完整镜像目录失败: {}", directory, cleanupException);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 镜像目录按仓库名称和地址摘要命名，同名的不同仓库互不影响
+     */
+    private File mirrorDirectory(String repoUrl) {
+        String name = extractProjectName(repoUrl).replaceAll("[^A-Za-z0-9._-]", "_");
+        String digest = Hashing.sha256().hashString(repoUrl, StandardCharsets.UTF_8).toString().substring(0, 12);
+        return Paths.get(mirrorDir, name + "-" + digest + ".git").toFile();
+    }
+
+    private <T> T withRetry(String repoUrl, String action, GitCall<T> call) {
+        int retryCount = 0;
+        while (true) {
+            try {
+                return call.call();
+            } catch (GitAPIException e) {
+                retryCount++;
+
+                // 记录具体异常信息
+                Throwable cause = e.getCause();
+                if (cause instanceof java.net.SocketException &&
+                        cause.getMessage().contains("Connection reset")) {
+                    log.warn("连接被重置，可能是网络不稳定或服务器问题");
+                }
+
+                if (retryCount >= MAX_RETRIES) {
+                    log.error("{}仓库失败，已重试 {} 次: {}", action, MAX_RETRIES, repoUrl, e);
+                    throw new RuntimeException(action + "仓库失败: " + repoUrl +
+                            "，可能是网络连接问题，请稍后重试", e);
+                }
+
+                log.warn("{}仓库失败，{} 秒后进行第 {} 次重试: {}",
+                        action, 5 * retryCount, retryCount, repoUrl, e);
+
+                try {
+                    Thread.sleep(5000L * retryCount); // 递增等待时间
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("线程被中断", ie);
+                }
+            }
+        }
+    }
+
+    /**
+     * 计算两个提交之间的文件差异，旧提交已不在历史中（如强制推送）时返回 null
+     */
+    private IndexPlan diff(Git git, String lastCommit, ObjectId head) throws IOException {
+        Repository repository = git.getRepository();
+        ObjectId oldTreeId;
+        try {
+            oldTreeId = repository.resolve(lastCommit + "^{tree}");
+        } catch (RevisionSyntaxException | MissingObjectException e) {
+            oldTreeId = null;
+        }
+        if (oldTreeId == null) {
+            log.warn("上次索引提交 {} 已不在仓库历史中，回退为全量索引", lastCommit);
+            return null;
+        }
+
+        IndexPlan plan = new IndexPlan();
+        try (ObjectReader reader = repository.newObjectReader()) {
+            CanonicalTreeParser oldTree = new CanonicalTreeParser();
+            oldTree.reset(reader, oldTreeId);
+            CanonicalTreeParser newTree = new CanonicalTreeParser();
+            newTree.reset(reader, repository.resolve(head.name() + "^{tree}"));
+            for (DiffEntry entry : git.diff().setOldTree(oldTree).setNewTree(newTree).call()) {
+                switch (entry.getChangeType()) {
+                    case ADD, COPY, MODIFY -> plan.changedPaths.add(entry.getNewPath());
+                    case DELETE -> plan.deletedPaths.add(entry.getOldPath());
+                    case RENAME -> {
+                        plan.deletedPaths.add(entry.getOldPath());
+                        plan.changedPaths.add(entry.getNewPath());
+                    }
+                }
+            }
+        } catch (GitAPIException e) {
+            throw new IOException("计算提交差异失败: " + lastCommit + ".." + head.name(), e);
+        }
+        return plan;
+    }
+
+    /**
+     * 全量索引：处理提交中的所有文件，并删除本仓库此前写入、提交中已不存在的文件；
+     * 同一知识库中上传的文件和其他仓库的文件不受影响
+     */
+    private IndexPlan fullPlan(Repository repository, ObjectId head, String repoUrl, String repoProjectName) throws IOException {
+        IndexPlan plan = new IndexPlan();
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(repository.resolve(head.name() + "^{tree}"));
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                plan.changedPaths.add(treeWalk.getPathString());
+            }
+        }
+        Set<String> indexedSources = pgVectorRepository.findSourcesByRepository(repoProjectName, repoUrl);
+        indexedSources.removeAll(plan.changedPaths);
+        plan.deletedPaths.addAll(indexedSources);
+        return plan;
+    }
+
+    /**
+     * 从镜像的对象库中把需要解析的文件写入任务目录，不检出整个工作区；符号链接和子模块不写出，解析时按跳过处理
+     */
+    private void checkout(Repository repository, ObjectId head, Set<String> paths, Path root) throws IOException {
+        Files.createDirectories(root);
+        if (paths.isEmpty()) {
+            return;
+        }
+        try (TreeWalk treeWalk = new TreeWalk(repository)) {
+            treeWalk.addTree(repository.resolve(head.name() + "^{tree}"));
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathFilterGroup.createFromStrings(paths));
+            while (treeWalk.next()) {
+                FileMode mode = treeWalk.getFileMode(0);
+                if (mode != FileMode.REGULAR_FILE && mode != FileMode.EXECUTABLE_FILE) {
+                    continue;
+                }
+                Path target = root.resolve(treeWalk.getPathString());
+                Files.createDirectories(target.getParent());
+                try (OutputStream out = Files.newOutputStream(target)) {
+                    repository.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).copyTo(out);
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析并分割单个文件，按内容去重后返回需要向量化的片段，在解析线程池中执行
+     */
+    private List<Document> parseFile(Path root, String source, String repoUrl, String repoProjectName, IngestionJob job,
+                                     Queue<String> rejectedPaths, Set<String> staleIds) {
+        Path file = root.resolve(source);
+        try {
+            if (!Files.isRegularFile(file) || !repositoryFileFilter.accept(file, source)) {
+                rejectedPaths.add(source);
+                return List.of();
+            }
+        } catch (IOException e) {
+            log.info("Failed to access file: {} - {}", source, e.getMessage());
+            return List.of();
+        }
+
+        job.addTask();
+        try {
+            String fileType = RagMetrics.fileType(source);
+            List<Document> documents = ragMetrics.ingestTimer(RagMetrics.INGEST_PARSE, repoProjectName, fileType).recordCallable(() -> read(file, source));
+            List<Document> documentSplitterList = ragMetrics.ingestTimer(RagMetrics.INGEST_SPLIT, repoProjectName, fileType).record(() -> {
+                List<Document> split = new ArrayList<>();
+                for (Document document : documents) {
+                    split.addAll(chunkingEngine.split(document, source));
+                }
+                return split;
+            });
+
+            // 以仓库内相对路径作为来源，重复分析同一仓库时未变化的片段不再向量化
+            ChunkDeduplicator.Scope scope = chunkDeduplicator.open(repoProjectName, source, repoUrl);
+            List<Document> pending = new ArrayList<>(documentSplitterList.size());
+            for (Document chunk : documentSplitterList) {
+                chunk.getMetadata().put(ChunkDeduplicator.METADATA_KNOWLEDGE, repoProjectName);
+                chunk.getMetadata().put(ChunkDeduplicator.METADATA_SOURCE, source);
+                chunk.getMetadata().put(ChunkDeduplicator.METADATA_REPO_URL, repoUrl);
+                Document identified = scope.identify(chunk);
+                if (scope.shouldWrite(identified)) {
+                    pending.add(identified);
+                }
+            }
+            staleIds.addAll(scope.staleIds());
+            job.taskSucceeded(documentSplitterList.size());
+            log.debug("{} 解析完成: {}，片段 {} 个，需写入 {} 个", repoProjectName, source, documentSplitterList.size(), pending.size());
+            return pending;
+        } catch (Exception e) {
+            log.error("遍历解析路径，上传知识库失败:{}", source, e);
+            job.taskFailed("解析失败: " + source);
+            return List.of();
+        }
+    }
+
+    /**
+     * 代码、Markdown 等按结构切分的文本文件直接读取原文，保留缩进和标记；其他文件交给 Tika 提取文本
+     */
+    private List<Document> read(Path file, String source) throws IOException {
+        if (chunkingEngine.isStructured(source)) {
+            try {
+                String text = Files.readString(file, StandardCharsets.UTF_8);
+                return text.isBlank() ? List.of() : List.of(new Document(text));
+            } catch (MalformedInputException e) {
+                log.debug("{} 不是 UTF-8 编码，改用 Tika 解析", source);
+            }
+        }
+        return new TikaDocumentReader(new PathResource(file)).get();
+    }
+
+    private void closeQuietly(PgVectorBulkLoader.BulkLoadSession session) {
+        if (session == null) {
+            return;
+        }
+        try {
+            session.close();
+        } catch (SQLException e) {
+            log.warn("关闭批量导入会话失败", e);
+        }
+    }
+
+    /**
+     * 提取仓库名称
+     *
+     * @param repoUrl 仓库URL
+     * @return 仓库名称
+     */
+    public static String extractProjectName(String repoUrl) {
+        String[] parts = repoUrl.split("/");
+        String projectNameWithGit = parts[parts.length - 1];
+        return projectNameWithGit.replace(".git", "");
+    }
+
+    @FunctionalInterface
+    private interface GitCall<T> {
+        T call() throws GitAPIException;
+    }
+
+    /**
+     * 本次需要处理的文件，均为仓库内相对路径
+     */
+    private static class IndexPlan {
+        private final Set<String> changedPaths = new LinkedHashSet<>();
+        private final List<String> deletedPaths = new ArrayList<>();
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.ywzai.trigger.service.ingest;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.file.Path;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-21
+ * @Description: 已落盘的待导入文件，请求结束后上传的临时文件会被清理，因此任务执行前先转存到任务目录
+ * @Version: 1.0
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class IngestionFile {
+    /** 落盘后的文件路径 */
+    private Path path;
+    /** 原始文件名 */
+    private String filename;
+    /** 文件大小（字节） */
+    private long size;
+    /** 文件类型 */
+    private String contentType;
+}
@@ -0,0 +1,102 @@
+package com.ywzai.trigger.service.ingest;
+
+import com.ywzai.api.dto.IngestionJobDTO;
+import lombok.Getter;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-21
+ * @Description: 知识库导入任务，进度计数在多个导入线程间共享
+ * @Version: 1.0
+ */
+@Getter
+public class IngestionJob {
+
+    public static final String TYPE_FILE_UPLOAD = "FILE_UPLOAD";
+    public static final String TYPE_GIT_REPOSITORY = "GIT_REPOSITORY";
+
+    private final String jobId = UUID.randomUUID().toString();
+    private final String jobType;
+    private final String ragTag;
+    private final long createTime = System.currentTimeMillis();
+
+    private final AtomicInteger totalTasks = new AtomicInteger(0);
+    private final AtomicInteger completedTasks = new AtomicInteger(0);
+    private final AtomicInteger failedTasks = new AtomicInteger(0);
+    private final AtomicInteger totalSegments = new AtomicInteger(0);
+
+    private volatile IngestionJobStatus status = IngestionJobStatus.PENDING;
+    private volatile String message;
+    private volatile long updateTime = createTime;
+
+    public IngestionJob(String jobType, String ragTag) {
+        this.jobType = jobType;
+        this.ragTag = ragTag;
+    }
+
+    public void start(int tasks) {
+        totalTasks.set(tasks);
+        changeStatus(IngestionJobStatus.RUNNING, null);
+    }
+
+    public void addTask() {
+        totalTasks.incrementAndGet();
+    }
+
+    public void taskSucceeded(int segments) {
+        totalSegments.addAndGet(segments);
+        completedTasks.incrementAndGet();
+        updateTime = System.currentTimeMillis();
+    }
+
+    public void taskFailed(String reason) {
+        failedTasks.incrementAndGet();
+        message = reason;
+        updateTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 根据子任务结果结束任务
+     */
+    public void finish() {
+        if (failedTasks.get() == 0) {
+            changeStatus(IngestionJobStatus.SUCCESS, String.format("处理了 %d 个文件，生成 %d 个文本片段", completedTasks.get(), totalSegments.get()));
+        } else if (completedTasks.get() > 0) {
+            changeStatus(IngestionJobStatus.PARTIAL_FAILED, String.format("成功 %d 个文件，失败 %d 个文件，最后一个错误: %s", completedTasks.get(), failedTasks.get(), message));
+        } else {
+            changeStatus(IngestionJobStatus.FAILED, message);
+        }
+    }
+
+    public void fail(String reason) {
+        changeStatus(IngestionJobStatus.FAILED, reason);
+    }
+
+    private void changeStatus(IngestionJobStatus status, String message) {
+        this.status = status;
+        if (message != null) {
+            this.message = message;
+        }
+        this.updateTime = System.currentTimeMillis();
+    }
+
+    public IngestionJobDTO toDTO() {
+        return IngestionJobDTO.builder()
+                .jobId(jobId)
+                .jobType(jobType)
+                .ragTag(ragTag)
+                .status(status.name())
+                .totalTasks(totalTasks.get())
+                .completedTasks(completedTasks.get())
+                .failedTasks(failedTasks.get())
+                .totalSegments(totalSegments.get())
+                .message(message)
+                .createTime(createTime)
+                .updateTime(updateTime)
+                .build();
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.ywzai.trigger.service.ingest;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.redisson.api.RList;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-21
+ * @Description: 知识库导入任务管理，提交即返回任务ID，任务在全局导入线程池中异步执行
+ * @Version: 1.0
+ */
+@Slf4j
+@Service
+public class IngestionJobService {
+
+    @Resource
+    private ThreadPoolExecutor ingestionExecutor;
+    @Resource
+    private FileIngestionService fileIngestionService;
+    @Resource
+    private GitRepositoryIngestionService gitRepositoryIngestionService;
+    @Resource
+    private RedissonClient redissonClient;
+
+    /** 任务记录保留时间（单位：小时） */
+    @Value("${rag.ingestion.job.retain-hours:24}")
+    private long retainHours;
+    /** 最多保留的任务记录数 */
+    @Value("${rag.ingestion.job.max-size:1000}")
+    private long maxSize;
+
+    private Cache<String, IngestionJob> jobCache;
+
+    @PostConstruct
+    public void init() {
+        jobCache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(retainHours, TimeUnit.HOURS)
+                .build();
+    }
+
+    public IngestionJob getJob(String jobId) {
+        return jobCache.getIfPresent(jobId);
+    }
+
+    /**
+     * 提交文件上传任务：先把上传文件转存到任务目录，再按文件拆分为子任务
+     *
+     * @param ragTag 知识库标签
+     * @param files  上传的文件
+     * @return 导入任务
+     * @throws IOException                文件转存失败
+     * @throws IllegalArgumentException   同一批上传中存在重名文件
+     * @throws RejectedExecutionException 导入线程池已满，没有任何文件被接收
+     */
+    public IngestionJob submitFileUpload(String ragTag, List<MultipartFile> files) throws IOException {
+        // 文件名即去重来源，同名文件并行导入会在同一来源下相互删除片段
+        Set<String> filenames = new HashSet<>();
+        for (MultipartFile file : files) {
+            if (!filenames.add(String.valueOf(file.getOriginalFilename()))) {
+                throw new IllegalArgumentException("存在重名文件: " + file.getOriginalFilename());
+            }
+        }
+        IngestionJob job = new IngestionJob(IngestionJob.TYPE_FILE_UPLOAD, ragTag);
+        Path jobDir = Files.createTempDirectory("rag-upload-" + job.getJobId());
+        List<IngestionFile> ingestionFiles = new ArrayList<>(files.size());
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                MultipartFile file = files.get(i);
+                Path target = jobDir.resolve(i + "-" + Path.of(String.valueOf(file.getOriginalFilename())).getFileName());
+                file.transferTo(target);
+                ingestionFiles.add(IngestionFile.builder()
+                        .path(target)
+                        .filename(file.getOriginalFilename())
+                        .size(file.getSize())
+                        .contentType(file.getContentType())
+                        .build());
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(jobDir);
+            throw e;
+        }
+
+        jobCache.put(job.getJobId(), job);
+        job.start(ingestionFiles.size());
+        List<CompletableFuture<Void>> futures = new ArrayList<>(ingestionFiles.size());
+        try {
+            for (IngestionFile file : ingestionFiles) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        int segments = fileIngestionService.processFileWithSpringAI(file, ragTag);
+                        job.taskSucceeded(segments);
+                        log.info("任务 {} 文件处理进度: {}/{}, 当前文件: {}, 生成片段数: {}",
+                                job.getJobId(), job.getCompletedTasks().get() + job.getFailedTasks().get(), ingestionFiles.size(), file.getFilename(), segments);
+                    } catch (Exception e) {
+                        log.error("任务 {} 处理文件失败: {}", job.getJobId(), file.getFilename(), e);
+                        job.taskFailed("文件处理失败: " + file.getFilename());
+                    }
+                }, ingestionExecutor));
+            }
+        } catch (RuntimeException e) {
+            if (futures.isEmpty()) {
+                // 一个文件都未提交时撤销任务，由调用方返回 503 提示稍后重试
+                jobCache.invalidate(job.getJobId());
+                deleteQuietly(jobDir);
+                throw e;
+            }
+            // 线程池队列已满，已提交的子任务继续执行，其余文件记为失败
+            log.error("任务 {} 提交到导入线程池失败", job.getJobId(), e);
+            for (int i = futures.size(); i < ingestionFiles.size(); i++) {
+                job.taskFailed("导入线程池繁忙，文件未处理: " + ingestionFiles.get(i).getFilename());
+            }
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((v, e) -> {
+            job.finish();
+            if (job.getCompletedTasks().get() > 0) {
+                addRagTag(ragTag);
+            }
+            deleteQuietly(jobDir);
+            log.info("任务 {} 文件上传完成，状态: {}, {}", job.getJobId(), job.getStatus(), job.getMessage());
+        });
+        return job;
+    }
+
+    /**
+     * 提交代码库解析任务
+     *
+     * @param repoUrl 仓库地址
+     * @return 导入任务
+     */
+    public IngestionJob submitGitRepository(String repoUrl) {
+        String repoProjectName = GitRepositoryIngestionService.extractProjectName(repoUrl);
+        IngestionJob job = new IngestionJob(IngestionJob.TYPE_GIT_REPOSITORY, repoProjectName);
+        jobCache.put(job.getJobId(), job);
+        try {
+            ingestionExecutor.execute(() -> {
+                job.start(0);
+                try {
+                    gitRepositoryIngestionService.ingest(repoUrl, job);
+                    job.finish();
+                    addRagTag(repoProjectName);
+                } catch (Exception e) {
+                    log.error("任务 {} 解析代码库失败: {}", job.getJobId(), repoUrl, e);
+                    job.fail(e.getMessage());
+                }
+            });
+        } catch (RuntimeException e) {
+            jobCache.invalidate(job.getJobId());
+            throw e;
+        }
+        return job;
+    }
+
+    private void addRagTag(String ragTag) {
+        RList<String> ragTagList = redissonClient.getList("ragTag");
+        if (!ragTagList.contains(ragTag)) {
+            ragTagList.add(ragTag);
+        }
+    }
+
+    private void deleteQuietly(Path dir) {
+        try {
+            FileUtils.deleteDirectory(dir.toFile());
+        } catch (IOException e) {
+            log.warn("清理任务目录失败: {}", dir, e);
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.ywzai.trigger.service.ingest;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-21
+ * @Description: 导入任务状态
+ * @Version: 1.0
+ */
+public enum IngestionJobStatus {
+
+    PENDING,
+    RUNNING,
+    SUCCESS,
+    PARTIAL_FAILED,
+    FAILED;
+
+    public boolean isFinished() {
+        return this == SUCCESS || this == PARTIAL_FAILED || this == FAILED;
+    }
+
+}
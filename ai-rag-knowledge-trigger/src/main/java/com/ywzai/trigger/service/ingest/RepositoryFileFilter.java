@@ -0,0 +1,97 @@
+package com.ywzai.trigger.service.ingest;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-24
+ * @Description: 代码库文件过滤，跳过版本库元数据、超大文件、按规则排除的文件和二进制文件
+ * @Version: 1.0
+ */
+@Component
+public class RepositoryFileFilter {
+
+    private static final Set<String> VCS_DIRECTORIES = Set.of(".git", ".svn", ".hg");
+
+    /** 单个文件的大小上限（字节），超过则跳过 */
+    @Value("${rag.ingestion.git.max-file-bytes:1048576}")
+    private long maxFileBytes;
+    /** 排除的文件，glob 规则，匹配仓库内以 / 开头的相对路径 */
+    @Value("${rag.ingestion.git.exclude-globs:**/node_modules/**,**/*.min.js,**/*.map,**/*.lock}")
+    private List<String> excludeGlobs;
+    /** 虽是二进制但可由 Tika 提取文本的文档，不做二进制检测 */
+    @Value("${rag.ingestion.git.document-globs:**/*.pdf,**/*.doc,**/*.docx,**/*.ppt,**/*.pptx,**/*.xls,**/*.xlsx}")
+    private List<String> documentGlobs;
+    /** 二进制检测读取的字节数，与 git 一致：前 8000 字节中出现 \0 即视为二进制 */
+    @Value("${rag.ingestion.git.sniff-bytes:8000}")
+    private int sniffBytes;
+
+    private List<PathMatcher> excludeMatchers;
+    private List<PathMatcher> documentMatchers;
+
+    @PostConstruct
+    public void init() {
+        excludeMatchers = toMatchers(excludeGlobs);
+        documentMatchers = toMatchers(documentGlobs);
+    }
+
+    /**
+     * 是否需要解析该文件
+     *
+     * @param file   文件
+     * @param source 仓库内相对路径，以 / 分隔
+     */
+    public boolean accept(Path file, String source) throws IOException {
+        Path relative = Path.of("/" + source);
+        for (String segment : source.split("/")) {
+            if (VCS_DIRECTORIES.contains(segment)) {
+                return false;
+            }
+        }
+        if (matches(excludeMatchers, relative) || Files.size(file) > maxFileBytes) {
+            return false;
+        }
+        return matches(documentMatchers, relative) || !isBinary(file);
+    }
+
+    private boolean isBinary(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(sniffBytes);
+            for (byte b : head) {
+                if (b == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<PathMatcher> toMatchers(List<String> globs) {
+        return globs.stream()
+                .map(String::trim)
+                .filter(glob -> !glob.isEmpty())
+                .map(glob -> FileSystems.getDefault().getPathMatcher("glob:" + glob))
+                .toList();
+    }
+
+}
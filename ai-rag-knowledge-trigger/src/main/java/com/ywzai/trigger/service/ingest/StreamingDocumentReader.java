@@ -0,0 +1,156 @@
+package com.ywzai.trigger.service.ingest;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.Tika;
+import org.apache.tika.metadata.HttpHeaders;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-22
+ * @Description: 恒定内存的流式文档读取器，Tika 边解析边输出文本（文本文件自动识别编码），按句子边界切成固定大小的窗口
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class StreamingDocumentReader {
+
+    /** 句子或段落的结束符，窗口优先在这些字符之后切分 */
+    private static final String SENTENCE_ENDINGS = "\n。！？；.!?;";
+
+    private final Tika tika = new Tika();
+
+    /** 每个窗口的最大字符数 */
+    @Value("${rag.ingestion.reader.window-chars:65536}")
+    private int windowChars;
+
+    /**
+     * 按需读取文件文本，每次只在内存中保留一个窗口
+     *
+     * @param path     文件路径
+     * @param filename 原始文件名
+     * @param parseTimer 记录每个窗口的解析耗时
+     * @return 文本窗口，订阅取消或读取结束时关闭文件
+     */
+    public Flux<Document> read(Path path, String filename, Timer parseTimer) {
+        return Flux.generate(
+                () -> open(path, filename),
+                (state, sink) -> {
+                    try {
+                        Document window = parseTimer.recordCallable(state::next);
+                        if (window == null) {
+                            log.info("文件 {} 读取完成，总字符数: {}，编码: {}", filename, state.offset, state.metadata.get(HttpHeaders.CONTENT_ENCODING));
+                            sink.complete();
+                        } else {
+                            sink.next(window);
+                        }
+                    } catch (IOException e) {
+                        sink.error(new UncheckedIOException("读取文件失败: " + filename, e));
+                    } catch (Exception e) {
+                        sink.error(e);
+                    }
+                    return state;
+                },
+                WindowState::close);
+    }
+
+    private WindowState open(Path path, String filename) throws IOException {
+        Metadata metadata = new Metadata();
+        metadata.set(TikaCoreProperties.RESOURCE_NAME_KEY, filename);
+        return new WindowState(tika.parse(path, metadata), metadata, filename, windowChars);
+    }
+
+    private static class WindowState {
+        private final Reader reader;
+        private final Metadata metadata;
+        private final String filename;
+        private final char[] buffer;
+        /** buffer 中上一个窗口遗留、尚未输出的字符数 */
+        private int carry;
+        /** 已输出的字符总数 */
+        private long offset;
+        private boolean eof;
+
+        private WindowState(Reader reader, Metadata metadata, String filename, int windowChars) {
+            this.reader = reader;
+            this.metadata = metadata;
+            this.filename = filename;
+            this.buffer = new char[windowChars];
+        }
+
+        private Document next() throws IOException {
+            while (true) {
+                int length = carry;
+                while (!eof && length < buffer.length) {
+                    int read = reader.read(buffer, length, buffer.length - length);
+                    if (read < 0) {
+                        eof = true;
+                    } else {
+                        length += read;
+                    }
+                }
+                if (length == 0) {
+                    return null;
+                }
+
+                int cut = eof ? length : findBoundary(length);
+                String text = new String(buffer, 0, cut);
+                System.arraycopy(buffer, cut, buffer, 0, length - cut);
+                carry = length - cut;
+                long start = offset;
+                offset += cut;
+
+                // 空白窗口不输出，继续读取下一个
+                if (text.isBlank()) {
+                    continue;
+                }
+                Map<String, Object> windowMetadata = new HashMap<>();
+                windowMetadata.put("source", filename);
+                windowMetadata.put("chunkStart", String.valueOf(start));
+                windowMetadata.put("chunkEnd", String.valueOf(offset));
+                return new Document(text, windowMetadata);
+            }
+        }
+
+        /**
+         * 在窗口后半段查找最后一个句子边界，找不到时退化为空白字符，再找不到才硬切
+         */
+        private int findBoundary(int length) {
+            int lowerBound = length / 2;
+            for (int i = length - 1; i >= lowerBound; i--) {
+                if (SENTENCE_ENDINGS.indexOf(buffer[i]) >= 0) {
+                    return i + 1;
+                }
+            }
+            for (int i = length - 1; i >= lowerBound; i--) {
+                if (Character.isWhitespace(buffer[i])) {
+                    return i + 1;
+                }
+            }
+            // 硬切时不拆开代理对
+            return Character.isHighSurrogate(buffer[length - 1]) ? length - 1 : length;
+        }
+
+        private void close() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                log.warn("关闭文件读取流失败: {}", filename, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.ywzai.trigger.service.knowledge;
+
+import com.ywzai.trigger.service.ingest.GitIndexStateStore;
+import com.ywzai.trigger.service.store.KnowledgePartitionManager;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RList;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Service;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-26
+ * @Description: 知识库管理，删除知识库时直接删除其向量分区，并清理标签列表和代码库索引状态
+ * @Version: 1.0
+ */
+@Slf4j
+@Service
+public class KnowledgeBaseService {
+
+    private static final String RAG_TAG_LIST_KEY = "ragTag";
+
+    @Resource
+    private KnowledgePartitionManager knowledgePartitionManager;
+    @Resource
+    private GitIndexStateStore gitIndexStateStore;
+    @Resource
+    private RedissonClient redissonClient;
+
+    /**
+     * 删除知识库
+     *
+     * @param knowledge 知识库标签
+     * @return 知识库是否存在
+     */
+    public boolean dropKnowledgeBase(String knowledge) {
+        boolean dropped = knowledgePartitionManager.dropPartition(knowledge);
+        RList<String> ragTagList = redissonClient.getList(RAG_TAG_LIST_KEY);
+        boolean listed = ragTagList.remove(knowledge);
+        gitIndexStateStore.clear(knowledge);
+        log.info("删除知识库 {}，分区存在: {}，标签存在: {}", knowledge, dropped, listed);
+        return dropped || listed;
+    }
+
+}
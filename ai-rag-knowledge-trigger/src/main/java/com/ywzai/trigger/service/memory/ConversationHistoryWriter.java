@@ -0,0 +1,158 @@
+package com.ywzai.trigger.service.memory;
+
+import com.ywzai.trigger.service.embedding.EmbeddingDispatcher;
+import com.ywzai.trigger.service.store.ChatHistoryRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-21
+ * @Description: 历史对话异步批量写入器，汇总所有会话的消息，按条数或时间窗口批量向量化并一次性写库
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class ConversationHistoryWriter {
+
+    @Resource
+    private ChatHistoryRepository chatHistoryRepository;
+    @Resource
+    private EmbeddingDispatcher embeddingDispatcher;
+
+    /** 每批最多写入的消息条数 */
+    @Value("${rag.history.writer.batch-size:64}")
+    private int batchSize;
+    /** 攒批的最长等待时间（单位：毫秒） */
+    @Value("${rag.history.writer.flush-interval-ms:500}")
+    private long flushIntervalMs;
+    /** 缓冲队列容量，限制内存占用 */
+    @Value("${rag.history.writer.capacity:10000}")
+    private int capacity;
+    /** 队列已满时提交方最多等待的时间（单位：毫秒），超时则丢弃该条消息 */
+    @Value("${rag.history.writer.offer-timeout-ms:200}")
+    private long offerTimeoutMs;
+
+    private BlockingQueue<PendingHistory> queue;
+    private Thread flushThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        running = true;
+        flushThread = new Thread(this::runLoop, "rag-history-writer");
+        flushThread.setDaemon(true);
+        flushThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flushThread.interrupt();
+        flushThread.join(TimeUnit.SECONDS.toMillis(30));
+        log.info("历史对话写入器已停止，剩余未写入消息: {}", queue.size());
+    }
+
+    /**
+     * 提交一条用户输入，队列满时阻塞等待，超时后丢弃
+     *
+     * @param memoryId  会话ID
+     * @param message   用户输入
+     * @param embedding 已计算好的向量，为空时在批量写入时统一向量化
+     * @return 是否成功入队
+     */
+    public boolean submit(String memoryId, String message, float[] embedding) {
+        try {
+            boolean accepted = queue.offer(new PendingHistory(memoryId, message, embedding), offerTimeoutMs, TimeUnit.MILLISECONDS);
+            if (!accepted) {
+                log.warn("历史对话写入队列已满，丢弃会话 {} 的消息", memoryId);
+            }
+            return accepted;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void runLoop() {
+        List<PendingHistory> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingHistory first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + flushIntervalMs;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingHistory next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // 停止时被中断，继续把队列中剩余的消息写完
+                queue.drainTo(batch, batchSize - batch.size());
+            }
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<PendingHistory> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            // 没有向量的消息合并成一次向量化请求
+            List<String> missingTexts = batch.stream()
+                    .filter(item -> item.getEmbedding() == null)
+                    .map(PendingHistory::getMessage)
+                    .toList();
+            List<float[]> missingEmbeddings = missingTexts.isEmpty() ? List.of() : embeddingDispatcher.embed(missingTexts);
+
+            List<Document> documents = new ArrayList<>(batch.size());
+            List<float[]> embeddings = new ArrayList<>(batch.size());
+            int missingIndex = 0;
+            for (PendingHistory item : batch) {
+                documents.add(new Document(UUID.randomUUID().toString(), item.getMessage(), Map.of(ChatHistoryRepository.METADATA_MEMORY_ID, item.getMemoryId())));
+                embeddings.add(item.getEmbedding() != null ? item.getEmbedding() : missingEmbeddings.get(missingIndex++));
+            }
+            chatHistoryRepository.add(documents, embeddings);
+            log.debug("批量写入历史对话 {} 条，其中新向量化 {} 条", batch.size(), missingTexts.size());
+        } catch (Exception e) {
+            log.error("批量写入历史对话失败，丢弃 {} 条消息", batch.size(), e);
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class PendingHistory {
+        private String memoryId;
+        private String message;
+        private float[] embedding;
+    }
+
+}
@@ -0,0 +1,242 @@
+package com.ywzai.trigger.service.memory;
+
+import com.alibaba.fastjson.JSON;
+import com.ywzai.trigger.service.store.ChatHistoryRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RBucket;
+import org.redisson.api.RList;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-30
+ * @Description: 会话记忆，Redis 列表保存最近 N 条用户和助手消息，直接作为上下文使用，不需要向量化；
+ * 更早的消息在后台由大模型合并进滚动摘要，会话空闲超过 TTL 后整体过期
+ * @Version: 1.0
+ */
+@Slf4j
+@Service
+public class ConversationMemoryService {
+
+    public static final String ROLE_USER = "user";
+    public static final String ROLE_ASSISTANT = "assistant";
+
+    private static final String TURNS_KEY_PREFIX = "rag:memory:turns:";
+    private static final String SUMMARY_KEY_PREFIX = "rag:memory:summary:";
+    private static final String SUMMARY_LOCK_KEY_PREFIX = "rag:memory:summary-lock:";
+
+    private static final String SUMMARY_PROMPT = """
+            请把下面的"已有摘要"和"新增对话"合并为一段新的中文摘要，供后续对话作为背景使用。
+            保留用户的身份、偏好、提到的关键事实、已得出的结论和尚未解决的问题，省略寒暄和重复内容，不超过 %d 字，只输出摘要本身。
+            已有摘要:
+            %s
+            新增对话:
+            %s
+            """;
+
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private OpenAiChatModel openAiChatModel;
+    @Resource
+    private ChatHistoryRepository chatHistoryRepository;
+
+    /** 原样保留的最近消息条数（用户和助手各算一条） */
+    @Value("${rag.memory.window-turns:10}")
+    private int windowTurns;
+    /** 超出窗口的消息攒够该条数后合并进摘要 */
+    @Value("${rag.memory.summary-batch:6}")
+    private int summaryBatch;
+    /** 摘要的最大字数 */
+    @Value("${rag.memory.summary-max-chars:800}")
+    private int summaryMaxChars;
+    /** 生成摘要使用的模型 */
+    @Value("${rag.memory.summary-model:${spring.ai.openai.chat.options.model}}")
+    private String summaryModel;
+    /** 单条消息保存的最大字符数 */
+    @Value("${rag.memory.max-turn-chars:4000}")
+    private int maxTurnChars;
+    /** 会话空闲多久后过期（单位：分钟） */
+    @Value("${rag.memory.ttl-minutes:1440}")
+    private long ttlMinutes;
+    /** 是否同时把用户消息向量化写入历史对话表，并在对话时按相似度检索 */
+    @Value("${rag.memory.vector-history.enabled:false}")
+    private boolean vectorHistoryEnabled;
+    /** 历史对话表中消息的保留天数，小于等于 0 表示不清理 */
+    @Value("${rag.memory.vector-history.retention-days:30}")
+    private int vectorHistoryRetentionDays;
+
+    /** 追加消息，单线程保证同一会话中用户消息先于助手回答写入 */
+    private ExecutorService appendExecutor;
+    /** 生成摘要，调用大模型较慢，与追加消息分开 */
+    private ExecutorService summaryExecutor;
+    private ScheduledExecutorService retentionExecutor;
+
+    @PostConstruct
+    public void init() {
+        appendExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(10000),
+                runnable -> newDaemonThread(runnable, "rag-memory-append"), new ThreadPoolExecutor.DiscardOldestPolicy());
+        summaryExecutor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(1000),
+                runnable -> newDaemonThread(runnable, "rag-memory-summary"), new ThreadPoolExecutor.DiscardPolicy());
+        if (vectorHistoryEnabled && vectorHistoryRetentionDays > 0) {
+            retentionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> newDaemonThread(runnable, "rag-memory-retention"));
+            retentionExecutor.scheduleWithFixedDelay(this::purgeVectorHistory, 1, 60, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        appendExecutor.shutdown();
+        appendExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        summaryExecutor.shutdownNow();
+        if (retentionExecutor != null) {
+            retentionExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isVectorHistoryEnabled() {
+        return vectorHistoryEnabled;
+    }
+
+    /**
+     * 会话上下文：滚动摘要 + 最近的消息
+     *
+     * @param memoryId 会话ID
+     * @return 拼接好的上下文，会话不存在时为空字符串
+     */
+    public String context(String memoryId) {
+        if (StringUtils.isBlank(memoryId)) {
+            return "";
+        }
+        RBucket<String> summaryBucket = redissonClient.getBucket(SUMMARY_KEY_PREFIX + memoryId);
+        RList<String> turns = redissonClient.getList(TURNS_KEY_PREFIX + memoryId);
+        String summary = summaryBucket.get();
+        List<String> recent = turns.readAll();
+        StringBuilder context = new StringBuilder();
+        if (StringUtils.isNotBlank(summary)) {
+            context.append("更早对话的摘要: ").append(summary).append("\n");
+        }
+        // 列表中可能有尚未合并进摘要的较早消息，只取最近的窗口
+        for (String json : recent.subList(Math.max(0, recent.size() - windowTurns), recent.size())) {
+            ConversationTurn turn = JSON.parseObject(json, ConversationTurn.class);
+            context.append(ROLE_ASSISTANT.equals(turn.getRole()) ? "助手: " : "用户: ").append(turn.getContent()).append("\n");
+        }
+        return context.toString();
+    }
+
+    /**
+     * 异步追加一条消息并刷新会话过期时间，超出窗口的消息够一批后触发摘要
+     */
+    public void append(String memoryId, String role, String content) {
+        if (StringUtils.isBlank(memoryId) || StringUtils.isBlank(content)) {
+            return;
+        }
+        String text = StringUtils.abbreviate(content, maxTurnChars);
+        appendExecutor.execute(() -> {
+            try {
+                RList<String> turns = redissonClient.getList(TURNS_KEY_PREFIX + memoryId);
+                turns.add(JSON.toJSONString(new ConversationTurn(role, text, System.currentTimeMillis())));
+                Duration ttl = Duration.ofMinutes(ttlMinutes);
+                turns.expire(ttl);
+                redissonClient.getBucket(SUMMARY_KEY_PREFIX + memoryId).expire(ttl);
+                if (turns.size() >= windowTurns + summaryBatch) {
+                    summaryExecutor.execute(() -> summarize(memoryId));
+                }
+            } catch (Exception e) {
+                log.warn("保存会话 {} 的消息失败", memoryId, e);
+            }
+        });
+    }
+
+    /**
+     * 透传回答流，正常结束后把完整回答保存为助手消息
+     */
+    public Flux<ChatResponse> recordAnswer(String memoryId, Flux<ChatResponse> stream) {
+        if (StringUtils.isBlank(memoryId)) {
+            return stream;
+        }
+        StringBuilder answer = new StringBuilder();
+        return stream
+                .doOnNext(response -> {
+                    Generation generation = response.getResult();
+                    if (generation != null && generation.getOutput().getText() != null) {
+                        answer.append(generation.getOutput().getText());
+                    }
+                })
+                .doOnComplete(() -> append(memoryId, ROLE_ASSISTANT, answer.toString()));
+    }
+
+    /**
+     * 把窗口之外的消息合并进摘要，再从列表头部删除这些消息；同一会话同时只有一个实例在生成摘要
+     */
+    private void summarize(String memoryId) {
+        RLock lock = redissonClient.getLock(SUMMARY_LOCK_KEY_PREFIX + memoryId);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            RList<String> turns = redissonClient.getList(TURNS_KEY_PREFIX + memoryId);
+            List<String> all = turns.readAll();
+            int folded = all.size() - windowTurns;
+            if (folded < summaryBatch) {
+                return;
+            }
+            String dialogue = all.subList(0, folded).stream()
+                    .map(json -> JSON.parseObject(json, ConversationTurn.class))
+                    .map(turn -> (ROLE_ASSISTANT.equals(turn.getRole()) ? "助手: " : "用户: ") + turn.getContent())
+                    .collect(Collectors.joining("\n"));
+            RBucket<String> summaryBucket = redissonClient.getBucket(SUMMARY_KEY_PREFIX + memoryId);
+            String previous = StringUtils.defaultIfBlank(summaryBucket.get(), "无");
+            ChatResponse response = openAiChatModel.call(new Prompt(String.format(SUMMARY_PROMPT, summaryMaxChars, previous, dialogue),
+                    OpenAiChatOptions.builder().model(summaryModel).build()));
+            String summary = response.getResult().getOutput().getText();
+            if (StringUtils.isBlank(summary)) {
+                return;
+            }
+            summaryBucket.set(summary.trim(), Duration.ofMinutes(ttlMinutes));
+            // 新消息只会追加在尾部，删除头部已合并的部分不影响期间新写入的消息
+            turns.trim(folded, -1);
+            log.debug("会话 {} 已将 {} 条消息合并进摘要", memoryId, folded);
+        } catch (Exception e) {
+            log.warn("生成会话 {} 的摘要失败，下次追加消息时重试", memoryId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void purgeVectorHistory() {
+        try {
+            int deleted = chatHistoryRepository.deleteOlderThan(Duration.ofDays(vectorHistoryRetentionDays));
+            if (deleted > 0) {
+                log.info("清理 {} 天前的历史对话向量 {} 条", vectorHistoryRetentionDays, deleted);
+            }
+        } catch (Exception e) {
+            log.warn("清理历史对话向量失败", e);
+        }
+    }
+
+    private static Thread newDaemonThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+}
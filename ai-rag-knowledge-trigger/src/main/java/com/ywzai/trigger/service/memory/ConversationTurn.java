@@ -0,0 +1,23 @@
+package com.ywzai.trigger.service.memory;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-30
+ * @Description: 会话中的一条消息
+ * @Version: 1.0
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConversationTurn {
+    /** 角色：user / assistant */
+    private String role;
+    /** 消息内容 */
+    private String content;
+    /** 时间戳 */
+    private long timestamp;
+}
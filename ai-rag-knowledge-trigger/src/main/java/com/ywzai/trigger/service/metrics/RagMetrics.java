@@ -0,0 +1,205 @@
+package com.ywzai.trigger.service.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.Resource;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-02
+ * @Description: 对话与导入各阶段的耗时、吞吐指标，统一在这里定义指标名和标签，通过 /actuator/prometheus 导出；
+ * 耗时指标都带百分位直方图，可在 Prometheus 中按任意分位数聚合多个实例
+ * @Version: 1.0
+ */
+@Component
+public class RagMetrics {
+
+    /** 对话阶段：问题向量化、知识库检索、历史对话检索、会话记忆读取、提示词构建、首个 token、完整回答 */
+    public static final String CHAT_QUERY_EMBEDDING = "query_embedding";
+    public static final String CHAT_RAG_SEARCH = "rag_search";
+    public static final String CHAT_HISTORY_SEARCH = "history_search";
+    public static final String CHAT_MEMORY = "memory";
+    public static final String CHAT_PROMPT_BUILD = "prompt_build";
+    public static final String CHAT_FIRST_TOKEN = "first_token";
+    public static final String CHAT_COMPLETION = "completion";
+
+    /** 导入阶段：解析、分割、向量化、入库 */
+    public static final String INGEST_PARSE = "parse";
+    public static final String INGEST_SPLIT = "split";
+    public static final String INGEST_EMBED = "embed";
+    public static final String INGEST_STORE = "store";
+
+    private static final String METADATA_KNOWLEDGE = "knowledge";
+    private static final String METADATA_SOURCE = "source";
+    private static final String METADATA_FILENAME = "filename";
+
+    /** 作为 file_type 标签的扩展名白名单，其余一律记为 other，避免任意上传的文件名撑大指标基数 */
+    private static final Set<String> FILE_TYPES = Set.of(
+            "txt", "md", "markdown", "html", "htm", "pdf", "doc", "docx", "ppt", "pptx", "xls", "xlsx", "csv",
+            "json", "xml", "yaml", "yml", "properties", "sql",
+            "java", "kt", "scala", "groovy", "py", "js", "jsx", "ts", "tsx", "go", "rs", "c", "h", "cpp", "hpp",
+            "cs", "rb", "php", "swift", "sh", "vue");
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 记录对话阶段耗时
+     */
+    public <T> T recordChat(String stage, Callable<T> callable) throws Exception {
+        return chatTimer(stage).recordCallable(callable);
+    }
+
+    /**
+     * 统计一次回答流：首个 token 和完整回答的耗时从收到请求开始计算，
+     * 结束时按大模型返回的用量累计 token 数和生成速度，并按结果（完成、取消、失败）计数
+     *
+     * @param startNanos 收到请求时的 System.nanoTime()
+     * @param cached     是否为回放的缓存回答
+     */
+    public Flux<ChatResponse> recordStream(Flux<ChatResponse> stream, long startNanos, boolean cached) {
+        return Flux.defer(() -> {
+            long[] firstTokenNanos = {0L};
+            Usage[] usage = {null};
+            return stream
+                    .doOnNext(response -> {
+                        Usage current = response.getMetadata().getUsage();
+                        if (current != null && current.getTotalTokens() != null && current.getTotalTokens() > 0) {
+                            usage[0] = current;
+                        }
+                        Generation generation = response.getResult();
+                        if (firstTokenNanos[0] == 0L && generation != null && StringUtils.isNotEmpty(generation.getOutput().getText())) {
+                            firstTokenNanos[0] = System.nanoTime();
+                            chatTimer(CHAT_FIRST_TOKEN).record(firstTokenNanos[0] - startNanos, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .doFinally(signal -> {
+                        long endNanos = System.nanoTime();
+                        String outcome = signal == SignalType.ON_COMPLETE ? "complete" : signal == SignalType.CANCEL ? "cancel" : "error";
+                        Counter.builder("rag.chat.streams")
+                                .description("回答流数量")
+                                .tag("outcome", outcome)
+                                .tag("cached", String.valueOf(cached))
+                                .register(meterRegistry)
+                                .increment();
+                        if (signal != SignalType.ON_COMPLETE) {
+                            return;
+                        }
+                        chatTimer(CHAT_COMPLETION).record(endNanos - startNanos, TimeUnit.NANOSECONDS);
+                        if (usage[0] == null) {
+                            return;
+                        }
+                        tokenCounter("prompt").increment(Objects.requireNonNullElse(usage[0].getPromptTokens(), 0));
+                        int completionTokens = Objects.requireNonNullElse(usage[0].getCompletionTokens(), 0);
+                        tokenCounter("completion").increment(completionTokens);
+                        double generatingSeconds = (endNanos - firstTokenNanos[0]) / 1e9;
+                        if (firstTokenNanos[0] > 0L && generatingSeconds > 0) {
+                            DistributionSummary.builder("rag.chat.tokens.per.second")
+                                    .description("首个 token 之后的生成速度")
+                                    .publishPercentileHistogram()
+                                    .register(meterRegistry)
+                                    .record(completionTokens / generatingSeconds);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 导入阶段计时器
+     *
+     * @param ragTag   知识库标签
+     * @param fileType 文件类型，由 {@link #fileType(String)} 得到
+     */
+    public Timer ingestTimer(String stage, String ragTag, String fileType) {
+        return Timer.builder("rag.ingest.stage")
+                .description("导入各阶段耗时")
+                .tag("stage", stage)
+                .tag("rag_tag", StringUtils.defaultIfBlank(ragTag, "none"))
+                .tag("file_type", fileType)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * 按批次记录向量化或入库耗时，批次中的知识库和文件类型取自片段元数据
+     */
+    public <T> T recordIngest(String stage, List<Document> batch, Callable<T> callable) throws Exception {
+        return ingestTimer(stage, knowledge(batch), fileType(batch)).recordCallable(callable);
+    }
+
+    /**
+     * 累计入库的片段数，按时间求速率即为每秒导入的片段数
+     */
+    public void countStoredChunks(List<Document> batch) {
+        Counter.builder("rag.ingest.chunks")
+                .description("入库的文本片段数")
+                .tag("rag_tag", StringUtils.defaultIfBlank(knowledge(batch), "none"))
+                .tag("file_type", fileType(batch))
+                .register(meterRegistry)
+                .increment(batch.size());
+    }
+
+    /**
+     * 文件类型标签，取小写扩展名，没有扩展名时为 none，不在白名单中时为 other
+     */
+    public static String fileType(String filename) {
+        String extension = StringUtils.substringAfterLast(StringUtils.defaultString(filename).replace('\\', '/'), ".");
+        if (extension.isEmpty() || extension.contains("/")) {
+            return "none";
+        }
+        extension = extension.toLowerCase(Locale.ROOT);
+        return FILE_TYPES.contains(extension) ? extension : "other";
+    }
+
+    private static String fileType(Collection<Document> batch) {
+        List<String> types = batch.stream()
+                .map(document -> {
+                    Object source = document.getMetadata().getOrDefault(METADATA_SOURCE, document.getMetadata().get(METADATA_FILENAME));
+                    return fileType(source == null ? null : source.toString());
+                })
+                .distinct()
+                .limit(2)
+                .toList();
+        // 代码库导入的批次中混有多种文件
+        return types.size() == 1 ? types.get(0) : types.isEmpty() ? "none" : "mixed";
+    }
+
+    private static String knowledge(List<Document> batch) {
+        Object knowledge = batch.isEmpty() ? null : batch.get(0).getMetadata().get(METADATA_KNOWLEDGE);
+        return knowledge == null ? null : knowledge.toString();
+    }
+
+    public Timer chatTimer(String stage) {
+        return Timer.builder("rag.chat.stage")
+                .description("对话各阶段耗时，首个 token 和完整回答从收到请求开始计算")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private Counter tokenCounter(String type) {
+        return Counter.builder("rag.chat.tokens")
+                .description("大模型消耗的 token 数")
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.ywzai.trigger.service.retrieval;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-28
+ * @Description: 检索缓存条目，保存问题向量和知识库检索结果，命中时不再调用向量模型和查询知识库
+ * @Version: 1.0
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CachedRetrieval {
+    /** 问题向量，按小端 float 编码为 Base64，历史对话检索和写入仍需使用 */
+    private String queryEmbedding;
+    /** 知识库检索结果 */
+    private List<CachedDocument> documents;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Builder
+    public static class CachedDocument {
+        private String id;
+        private String text;
+        private Map<String, Object> metadata;
+        private Double score;
+    }
+}
@@ -0,0 +1,213 @@
+package com.ywzai.trigger.service.retrieval;
+
+import com.ywzai.trigger.service.answer.SemanticAnswerCache;
+import com.ywzai.trigger.service.embedding.QueryEmbeddingService;
+import com.ywzai.trigger.service.memory.ConversationMemoryService;
+import com.ywzai.trigger.service.metrics.RagMetrics;
+import com.ywzai.trigger.service.store.ChatHistoryRepository;
+import com.ywzai.trigger.service.store.PgVectorRepository;
+import com.ywzai.trigger.service.store.TagMergeMode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-20
+ * @Description: 对话检索服务，知识库检索、会话记忆读取与历史检索并行执行，不占用请求线程
+ * @Version: 1.0
+ */
+@Slf4j
+@Service
+public class ChatRetrievalService {
+
+    @Resource
+    private QueryEmbeddingService queryEmbeddingService;
+    @Resource
+    private PgVectorRepository pgVectorRepository;
+    @Resource
+    private ChatHistoryRepository chatHistoryRepository;
+    @Resource
+    private RetrievalCache retrievalCache;
+    @Resource
+    private ConversationMemoryService conversationMemoryService;
+    @Resource
+    private SemanticAnswerCache semanticAnswerCache;
+    @Resource
+    private RagMetrics ragMetrics;
+
+    /** 检索线程数上限 */
+    @Value("${rag.retrieval.threads:32}")
+    private int threads;
+    /** 检索任务排队上限 */
+    @Value("${rag.retrieval.queue-capacity:1000}")
+    private int queueCapacity;
+    /** 知识库候选片段数，多取的候选由 ContextAssembler 去重、重排后按 token 预算截取 */
+    @Value("${rag.context.candidates:20}")
+    private int ragTopK;
+    /** 历史对话向量检索的候选条数，仅在开启向量历史时使用 */
+    @Value("${rag.context.history-candidates:10}")
+    private int historyTopK;
+    /** 未指定检索方式时的默认值 */
+    @Value("${rag.retrieval.mode:VECTOR}")
+    private RetrievalMode defaultMode;
+    /** 多个知识库时的默认合并方式：GLOBAL 统一取前 topK 条，QUOTA 每个知识库各取相同条数 */
+    @Value("${rag.retrieval.tag-merge:GLOBAL}")
+    private TagMergeMode defaultTagMerge;
+    /** 混合检索时全文检索与向量检索各自的候选数 */
+    @Value("${rag.retrieval.hybrid.candidates:20}")
+    private int hybridCandidates;
+    /** 倒数排名融合的平滑常数 */
+    @Value("${rag.retrieval.hybrid.rrf-k:60}")
+    private int rrfK;
+
+    private Scheduler retrievalScheduler;
+
+    @PostConstruct
+    public void init() {
+        retrievalScheduler = Schedulers.newBoundedElastic(threads, queueCapacity, "rag-retrieval");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        retrievalScheduler.dispose();
+    }
+
+    /**
+     * 检索本轮对话所需的上下文：先向量化问题，再并行检索知识库和历史对话。
+     * 知识库检索结果命中缓存时直接复用缓存中的问题向量和文档，只检索历史对话；
+     * 问题向量化后查找语义回答缓存，没有会话记忆和历史对话时才查找，命中时跳过知识库检索
+     *
+     * @param message     用户问题
+     * @param ragTags     知识库标签，可为多个
+     * @param memoryId    会话ID
+     * @param mode        知识库检索方式，为 null 时使用默认方式
+     * @param tagMerge    多个知识库时的合并方式，为 null 时使用默认方式；混合检索时总是统一取前 topK 条
+     * @param answerModel 对话模型，为 null 时不使用语义回答缓存
+     * @return 检索结果
+     */
+    public Mono<RetrievalContext> retrieve(String message, List<String> ragTags, String memoryId, RetrievalMode mode, TagMergeMode tagMerge,
+                                           String answerModel) {
+        RetrievalMode retrievalMode = mode == null ? defaultMode : mode;
+        TagMergeMode mergeMode = tagMerge == null ? defaultTagMerge : tagMerge;
+        List<String> tags = ragTags == null ? List.of() : ragTags.stream().filter(StringUtils::isNotBlank).map(String::trim).distinct().toList();
+        return Mono.fromCallable(() -> {
+                    String cacheKey = retrievalCache.key(tags, message, retrievalMode + "-" + mergeMode, ragTopK);
+                    return new CacheLookup(cacheKey, retrievalCache.get(cacheKey));
+                })
+                .subscribeOn(retrievalScheduler)
+                .flatMap(lookup -> lookup.cached() != null
+                        ? fromCache(lookup.cached(), tags, memoryId, answerModel)
+                        : search(message, tags, memoryId, retrievalMode, mergeMode, lookup.key(), answerModel));
+    }
+
+    private Mono<RetrievalContext> fromCache(CachedRetrieval cached, List<String> ragTags, String memoryId, String answerModel) {
+        float[] queryEmbedding = RetrievalCache.queryEmbedding(cached);
+        List<Document> ragDocuments = RetrievalCache.documents(cached);
+        return Mono.zip(memory(memoryId), history(queryEmbedding, memoryId))
+                .map(tuple -> RetrievalContext.builder()
+                        .queryEmbedding(queryEmbedding)
+                        .ragDocuments(ragDocuments)
+                        .memoryContext(tuple.getT1())
+                        .historyDocuments(tuple.getT2())
+                        .answerLookup(answerLookup(ragTags, answerModel, queryEmbedding, tuple.getT1(), tuple.getT2()))
+                        .build());
+    }
+
+    private Mono<RetrievalContext> search(String message, List<String> ragTags, String memoryId, RetrievalMode retrievalMode,
+                                          TagMergeMode mergeMode, String cacheKey, String answerModel) {
+        // 会话记忆不依赖问题向量，与向量化同时读取
+        return Mono.zip(Mono.fromCallable(() -> ragMetrics.recordChat(RagMetrics.CHAT_QUERY_EMBEDDING, () -> queryEmbeddingService.embed(message))).subscribeOn(retrievalScheduler), memory(memoryId))
+                .flatMap(embeddingAndMemory -> {
+                    float[] queryEmbedding = embeddingAndMemory.getT1();
+                    String memoryContext = embeddingAndMemory.getT2();
+                    if (!answerCacheable(answerModel, memoryContext)) {
+                        return searchKnowledge(message, ragTags, retrievalMode, mergeMode, cacheKey, queryEmbedding, memoryContext,
+                                history(queryEmbedding, memoryId), semanticAnswerCache.none());
+                    }
+                    // 可能使用语义回答缓存时先确认没有历史对话（未开启向量历史时不查库），命中则不再检索知识库
+                    return history(queryEmbedding, memoryId).flatMap(historyDocuments -> {
+                        SemanticAnswerCache.Lookup answerLookup = answerLookup(ragTags, answerModel, queryEmbedding, memoryContext, historyDocuments);
+                        if (answerLookup.isHit()) {
+                            return Mono.just(RetrievalContext.builder()
+                                    .queryEmbedding(queryEmbedding)
+                                    .ragDocuments(List.of())
+                                    .memoryContext(memoryContext)
+                                    .historyDocuments(historyDocuments)
+                                    .answerLookup(answerLookup)
+                                    .build());
+                        }
+                        return searchKnowledge(message, ragTags, retrievalMode, mergeMode, cacheKey, queryEmbedding, memoryContext,
+                                Mono.just(historyDocuments), answerLookup);
+                    });
+                });
+    }
+
+    private Mono<RetrievalContext> searchKnowledge(String message, List<String> ragTags, RetrievalMode retrievalMode, TagMergeMode mergeMode,
+                                                   String cacheKey, float[] queryEmbedding, String memoryContext,
+                                                   Mono<List<Document>> history, SemanticAnswerCache.Lookup answerLookup) {
+        return Mono.zip(
+                        search(RagMetrics.CHAT_RAG_SEARCH, () -> retrievalMode == RetrievalMode.HYBRID
+                                ? pgVectorRepository.hybridSearch(queryEmbedding, message, ragTopK, ragTags, hybridCandidates, rrfK)
+                                : pgVectorRepository.similaritySearch(queryEmbedding, ragTopK, ragTags, mergeMode)),
+                        history)
+                .map(tuple -> {
+                    retrievalCache.put(cacheKey, queryEmbedding, tuple.getT1());
+                    return RetrievalContext.builder()
+                            .queryEmbedding(queryEmbedding)
+                            .ragDocuments(tuple.getT1())
+                            .memoryContext(memoryContext)
+                            .historyDocuments(tuple.getT2())
+                            .answerLookup(answerLookup)
+                            .build();
+                });
+    }
+
+    /**
+     * 缓存的回答不包含会话上下文，只有首轮问答（没有会话记忆）才可能复用
+     */
+    private boolean answerCacheable(String answerModel, String memoryContext) {
+        return answerModel != null && semanticAnswerCache.isEnabled() && StringUtils.isBlank(memoryContext);
+    }
+
+    private SemanticAnswerCache.Lookup answerLookup(List<String> ragTags, String answerModel, float[] queryEmbedding,
+                                                    String memoryContext, List<Document> historyDocuments) {
+        if (!answerCacheable(answerModel, memoryContext) || !historyDocuments.isEmpty()) {
+            return semanticAnswerCache.none();
+        }
+        return semanticAnswerCache.lookup(ragTags, answerModel, queryEmbedding);
+    }
+
+    private Mono<String> memory(String memoryId) {
+        return Mono.fromCallable(() -> ragMetrics.recordChat(RagMetrics.CHAT_MEMORY, () -> conversationMemoryService.context(memoryId))).subscribeOn(retrievalScheduler);
+    }
+
+    private Mono<List<Document>> history(float[] queryEmbedding, String memoryId) {
+        if (!conversationMemoryService.isVectorHistoryEnabled()) {
+            return Mono.just(List.of());
+        }
+        return search(RagMetrics.CHAT_HISTORY_SEARCH, () -> chatHistoryRepository.similaritySearch(queryEmbedding, historyTopK, memoryId));
+    }
+
+    private Mono<List<Document>> search(String stage, Callable<List<Document>> query) {
+        return Mono.fromCallable(() -> ragMetrics.recordChat(stage, query)).subscribeOn(retrievalScheduler);
+    }
+
+    /**
+     * 缓存查询结果，key 为 null 表示不使用缓存，cached 为 null 表示未命中
+     */
+    private record CacheLookup(String key, CachedRetrieval cached) {
+    }
+
+}
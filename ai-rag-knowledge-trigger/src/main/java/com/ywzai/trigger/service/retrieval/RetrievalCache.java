@@ -0,0 +1,176 @@
+package com.ywzai.trigger.service.retrieval;
+
+import com.alibaba.fastjson.JSON;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.ywzai.trigger.service.store.KnowledgeVersionStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-28
+ * @Description: 检索结果两级缓存，进程内缓存在前，Redis 在后供多实例共享；
+ * 键为 (知识库, 版本号, 检索方式, topK, 规范化后的问题)，多个知识库时按标签排序后逐个以“长度#标签@版本号”拼接，导入使知识库版本号递增后旧条目不再命中，按大小和过期时间淘汰
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class RetrievalCache {
+
+    private static final String CACHE_KEY_PREFIX = "rag:retrieval:";
+
+    @Resource
+    private RedissonClient redissonClient;
+    @Resource
+    private KnowledgeVersionStore knowledgeVersionStore;
+
+    /** 是否启用检索缓存 */
+    @Value("${rag.retrieval.cache.enabled:true}")
+    private boolean enabled;
+    /** 进程内缓存的最大条数 */
+    @Value("${rag.retrieval.cache.local-max-size:1000}")
+    private long localMaxSize;
+    /** 缓存过期时间（单位：秒），两级缓存相同 */
+    @Value("${rag.retrieval.cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private Cache<String, CachedRetrieval> localCache;
+
+    @PostConstruct
+    public void init() {
+        localCache = CacheBuilder.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 生成缓存键，需在检索前生成，检索期间发生导入时结果写入旧版本的键，不会被后续请求命中
+     *
+     * @return 缓存键，未启用或无法获取版本号时返回 null，表示不使用缓存
+     */
+    public String key(List<String> ragTags, String query, String mode, int topK) {
+        if (!enabled || ragTags.isEmpty()) {
+            return null;
+        }
+        List<String> sorted = ragTags.stream().sorted().toList();
+        try {
+            // 标签可能包含任意字符，每个标签带上长度前缀，避免不同的标签组合拼接后相同；任一知识库版本变化都会使键变化
+            String tags = sorted.stream()
+                    .map(ragTag -> ragTag.length() + "#" + ragTag + "@" + knowledgeVersionStore.current(ragTag))
+                    .collect(Collectors.joining("|"));
+            String digest = DigestUtils.md5DigestAsHex(normalize(query).getBytes(StandardCharsets.UTF_8));
+            return CACHE_KEY_PREFIX + tags + ":" + mode + ":" + topK + ":" + digest;
+        } catch (Exception e) {
+            log.warn("获取知识库 {} 的版本号失败，跳过检索缓存", sorted, e);
+            return null;
+        }
+    }
+
+    /**
+     * 依次查询进程内缓存和 Redis，Redis 命中时回填进程内缓存
+     */
+    public CachedRetrieval get(String key) {
+        if (key == null) {
+            return null;
+        }
+        CachedRetrieval cached = localCache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            RBucket<String> bucket = redissonClient.getBucket(key);
+            String json = bucket.get();
+            if (json == null) {
+                return null;
+            }
+            cached = JSON.parseObject(json, CachedRetrieval.class);
+            localCache.put(key, cached);
+            return cached;
+        } catch (Exception e) {
+            log.warn("读取检索缓存失败: {}", key, e);
+            return null;
+        }
+    }
+
+    public void put(String key, float[] queryEmbedding, List<Document> documents) {
+        if (key == null) {
+            return;
+        }
+        CachedRetrieval cached = CachedRetrieval.builder()
+                .queryEmbedding(encode(queryEmbedding))
+                .documents(documents.stream()
+                        .map(document -> CachedRetrieval.CachedDocument.builder()
+                                .id(document.getId())
+                                .text(document.getText())
+                                .metadata(document.getMetadata())
+                                .score(document.getScore())
+                                .build())
+                        .toList())
+                .build();
+        localCache.put(key, cached);
+        try {
+            RBucket<String> bucket = redissonClient.getBucket(key);
+            bucket.set(JSON.toJSONString(cached), Duration.ofSeconds(ttlSeconds));
+        } catch (Exception e) {
+            log.warn("写入检索缓存失败: {}", key, e);
+        }
+    }
+
+    public static float[] queryEmbedding(CachedRetrieval cached) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(cached.getQueryEmbedding())).order(ByteOrder.LITTLE_ENDIAN);
+        float[] embedding = new float[buffer.remaining() / Float.BYTES];
+        buffer.asFloatBuffer().get(embedding);
+        return embedding;
+    }
+
+    public static List<Document> documents(CachedRetrieval cached) {
+        return cached.getDocuments().stream()
+                .map(document -> Document.builder()
+                        .id(document.getId())
+                        .text(document.getText())
+                        .metadata(document.getMetadata() == null ? Map.of() : document.getMetadata())
+                        .score(document.getScore())
+                        .build())
+                .toList();
+    }
+
+    /**
+     * 问题规范化：去掉首尾空白和句末标点，合并连续空白，统一小写
+     */
+    static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        String normalized = query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return StringUtils.stripEnd(normalized, "?？。.!！ ");
+    }
+
+    private static String encode(float[] embedding) {
+        ByteBuffer buffer = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(embedding);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+}
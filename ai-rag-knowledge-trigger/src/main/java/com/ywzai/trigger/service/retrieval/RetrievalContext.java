@@ -0,0 +1,33 @@
+package com.ywzai.trigger.service.retrieval;
+
+import com.ywzai.trigger.service.answer.SemanticAnswerCache;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-20
+ * @Description: 一轮对话的检索结果，包含问题向量、知识库文档、会话记忆、历史对话和语义回答缓存的查找结果
+ * @Version: 1.0
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RetrievalContext {
+    /** 本轮问题向量 */
+    private float[] queryEmbedding;
+    /** 知识库检索结果 */
+    private List<Document> ragDocuments;
+    /** 会话记忆：滚动摘要 + 最近的消息 */
+    private String memoryContext;
+    /** 历史对话向量检索结果，未开启向量历史时为空 */
+    private List<Document> historyDocuments;
+    /** 语义回答缓存的查找结果，命中时未检索知识库，ragDocuments 为空 */
+    private SemanticAnswerCache.Lookup answerLookup;
+}
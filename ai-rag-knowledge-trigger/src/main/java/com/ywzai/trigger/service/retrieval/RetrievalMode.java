@@ -0,0 +1,16 @@
+package com.ywzai.trigger.service.retrieval;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-27
+ * @Description: 知识库检索方式
+ * @Version: 1.0
+ */
+public enum RetrievalMode {
+
+    /** 仅向量检索 */
+    VECTOR,
+    /** 全文检索与向量检索按倒数排名融合 */
+    HYBRID
+
+}
@@ -0,0 +1,93 @@
+package com.ywzai.trigger.service.store;
+
+import com.alibaba.fastjson.JSON;
+import com.pgvector.PGvector;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.document.Document;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-26
+ * @Description: 历史对话向量表 vector_store_openai_history，与知识库分开存储，检索时先按会话ID过滤再精确计算距离
+ * @Version: 1.0
+ */
+@Slf4j
+@Repository
+public class ChatHistoryRepository {
+
+    public static final String HISTORY_TABLE_NAME = "vector_store_openai_history";
+    public static final String METADATA_MEMORY_ID = "historychat";
+
+    private static final String INSERT_SQL_PREFIX = "INSERT INTO " + HISTORY_TABLE_NAME + " (id, memory_id, content, metadata, embedding) VALUES ";
+    private static final String INSERT_SQL_VALUES = "(?, ?, ?, ?::jsonb, ?)";
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 在单个会话的历史消息中检索
+     *
+     * @param embedding 问题向量
+     * @param topK      返回条数
+     * @param memoryId  会话ID
+     * @return 按相似度排序的历史消息
+     */
+    public List<Document> similaritySearch(float[] embedding, int topK, String memoryId) {
+        if (StringUtils.isBlank(memoryId)) {
+            return List.of();
+        }
+        String sql = "SELECT id, content, metadata, embedding <=> ? AS distance FROM " + HISTORY_TABLE_NAME +
+                " WHERE memory_id = ? AND embedding <=> ? < 1 ORDER BY distance LIMIT ?";
+        PGvector queryVector = new PGvector(embedding);
+        return jdbcTemplate.query(sql, PgVectorRepository.DOCUMENT_ROW_MAPPER, queryVector, memoryId, queryVector, topK);
+    }
+
+    /**
+     * 写入历史消息，文档元数据中必须带有会话ID
+     *
+     * @param documents  历史消息
+     * @param embeddings 与消息一一对应的向量
+     */
+    public void add(List<Document> documents, List<float[]> embeddings) {
+        if (documents.size() != embeddings.size()) {
+            throw new IllegalArgumentException("文档数量与向量数量不一致: " + documents.size() + " != " + embeddings.size());
+        }
+        for (int start = 0; start < documents.size(); start += MAX_ROWS_PER_INSERT) {
+            int end = Math.min(start + MAX_ROWS_PER_INSERT, documents.size());
+            StringBuilder sql = new StringBuilder(INSERT_SQL_PREFIX);
+            List<Object> args = new ArrayList<>((end - start) * 5);
+            for (int i = start; i < end; i++) {
+                Document document = documents.get(i);
+                sql.append(i == start ? "" : ", ").append(INSERT_SQL_VALUES);
+                args.add(UUID.fromString(document.getId()));
+                args.add(String.valueOf(document.getMetadata().get(METADATA_MEMORY_ID)));
+                args.add(document.getText());
+                args.add(JSON.toJSONString(document.getMetadata()));
+                args.add(new PGvector(embeddings.get(i)));
+            }
+            jdbcTemplate.update(sql.toString(), args.toArray());
+        }
+        log.debug("写入历史对话 {} 条", documents.size());
+    }
+
+    /**
+     * 删除早于保留期限的历史消息
+     *
+     * @return 删除的行数
+     */
+    public int deleteOlderThan(Duration retention) {
+        String sql = "DELETE FROM " + HISTORY_TABLE_NAME + " WHERE create_time < now() - ?::interval";
+        return jdbcTemplate.update(sql, retention.toSeconds() + " seconds");
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.ywzai.trigger.service.store;
+
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-26
+ * @Description: 知识库分区管理，每个知识库标签对应 vector_store_openai 的一个 LIST 分区，首次写入时创建，删除知识库即删除分区
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class KnowledgePartitionManager {
+
+    /** 没有匹配的分区时 PostgreSQL 报 no partition of relation found for row，SQLState 为 23514 */
+    private static final String NO_PARTITION_SQL_STATE = "23514";
+
+    private static final String PARTITION_PREFIX = PgVectorRepository.VECTOR_TABLE_NAME + "_p_";
+
+    private static final String LIST_PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = '" + PgVectorRepository.VECTOR_TABLE_NAME + "'::regclass";
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private VectorIndexManager vectorIndexManager;
+    @Resource
+    private KnowledgeVersionStore knowledgeVersionStore;
+
+    /** 本实例已确认存在的分区 */
+    private final Set<String> knownPartitions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 分区表名，与 migrate-partition.sql 的规则一致：前缀 + md5(标签) 前 20 位，保证是合法且不超长的标识符
+     */
+    public static String partitionTable(String knowledge) {
+        return PARTITION_PREFIX + DigestUtils.md5DigestAsHex(knowledge.getBytes(StandardCharsets.UTF_8)).substring(0, 20);
+    }
+
+    /**
+     * 确保知识库分区存在，不存在时创建分区及其向量索引
+     *
+     * @param knowledge 知识库标签
+     * @return 分区表名
+     */
+    public String ensurePartition(String knowledge) {
+        String table = partitionTable(knowledge);
+        if (knownPartitions.contains(table)) {
+            return table;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            // 多个导入任务可能同时写入同一个新知识库
+            jdbcTemplate.queryForObject("SELECT pg_advisory_xact_lock(hashtext(?))", Object.class, table);
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + table + " PARTITION OF " + PgVectorRepository.VECTOR_TABLE_NAME +
+                    " FOR VALUES IN ('" + knowledge.replace("'", "''") + "')");
+            // 新分区为空表，直接建索引即可
+            vectorIndexManager.createIndexIfMissing(table);
+        });
+        knownPartitions.add(table);
+        log.info("知识库 {} 的分区已就绪: {}", knowledge, table);
+        return table;
+    }
+
+    /**
+     * 缓存的分区已被删除时（其他实例删除了知识库，或本实例在确认分区之后删除），丢弃缓存并重新创建分区
+     *
+     * @param knowledge 知识库标签
+     * @return 分区表名
+     */
+    public String recreatePartition(String knowledge) {
+        knownPartitions.remove(partitionTable(knowledge));
+        log.warn("知识库 {} 的分区已不存在，重新创建", knowledge);
+        return ensurePartition(knowledge);
+    }
+
+    /**
+     * 是否为写入时找不到分区的错误
+     */
+    public static boolean isMissingPartition(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && NO_PARTITION_SQL_STATE.equals(sqlException.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 删除知识库分区，只锁定该分区和父表元数据，不产生逐行删除的膨胀
+     *
+     * @param knowledge 知识库标签
+     * @return 分区是否存在
+     */
+    public boolean dropPartition(String knowledge) {
+        String table = partitionTable(knowledge);
+        knownPartitions.remove(table);
+        boolean exists = listPartitionTables().contains(table);
+        if (exists) {
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+            vectorIndexManager.forget(table);
+            knowledgeVersionStore.bump(knowledge);
+            log.info("已删除知识库 {} 的分区: {}", knowledge, table);
+        }
+        return exists;
+    }
+
+    public List<String> listPartitionTables() {
+        return jdbcTemplate.queryForList(LIST_PARTITIONS_SQL, String.class);
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.ywzai.trigger.service.store;
+
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.stereotype.Component;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-28
+ * @Description: 知识库版本号，知识库内容每次变化后递增，检索缓存的键带上版本号，版本变化后旧缓存自然失效
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class KnowledgeVersionStore {
+
+    private static final String VERSION_KEY_PREFIX = "rag:knowledge:version:";
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    public long current(String knowledge) {
+        return redissonClient.getAtomicLong(VERSION_KEY_PREFIX + knowledge).get();
+    }
+
+    /**
+     * 知识库内容已变化，数据已写入后调用；删除知识库时同样递增而不是删除，避免重建后复用旧版本号命中旧缓存
+     */
+    public void bump(String knowledge) {
+        try {
+            redissonClient.getAtomicLong(VERSION_KEY_PREFIX + knowledge).incrementAndGet();
+        } catch (Exception e) {
+            // 数据已提交，不因缓存失效失败而回报导入失败，旧缓存最迟在过期后失效
+            log.warn("更新知识库 {} 的版本号失败", knowledge, e);
+        }
+    }
+
+}
@@ -0,0 +1,315 @@
+package com.ywzai.trigger.service.store;
+
+import com.alibaba.fastjson.JSON;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-23
+ * @Description: 基于 COPY FROM STDIN 的向量批量导入，先暂存到本地文件，提交时在短事务内写入临时表并合并到 vector_store_openai
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class PgVectorBulkLoader {
+
+    private static final String STAGING_TABLE_NAME = PgVectorRepository.VECTOR_TABLE_NAME + "_staging";
+
+    /** 不使用 LIKE 父表，避免会话期间一直持有父表的锁，阻塞其他任务创建分区 */
+    private static final String CREATE_STAGING_SQL = "CREATE TEMP TABLE " + STAGING_TABLE_NAME +
+            " (id uuid, knowledge text, content text, metadata json, embedding vector) ON COMMIT DROP";
+    private static final String MERGE_SQL = "INSERT INTO " + PgVectorRepository.VECTOR_TABLE_NAME + " (id, knowledge, content, metadata, embedding) " +
+            "SELECT id, knowledge, content, metadata, embedding FROM " + STAGING_TABLE_NAME +
+            " ON CONFLICT (knowledge, id) DO UPDATE SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding";
+    private static final String DELETE_SQL = "DELETE FROM " + PgVectorRepository.VECTOR_TABLE_NAME + " WHERE knowledge = ? AND id = ANY(?)";
+    private static final String COPY_SQL = "COPY " + STAGING_TABLE_NAME + " (id, knowledge, content, metadata, embedding) FROM STDIN WITH (FORMAT %s)";
+
+    /** PGCOPY 二进制格式文件头：签名 + flags + 扩展区长度 */
+    private static final byte[] BINARY_HEADER = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    @Resource
+    private DataSource dataSource;
+    @Resource
+    private VectorIndexManager vectorIndexManager;
+    @Resource
+    private KnowledgePartitionManager knowledgePartitionManager;
+    @Resource
+    private KnowledgeVersionStore knowledgeVersionStore;
+
+    /** 是否使用二进制 COPY，向量不再转成文本，体积更小、解析更快 */
+    @Value("${rag.store.bulk-load.binary:true}")
+    private boolean binary;
+
+    /** 暂存文件所在目录，为空时使用系统临时目录 */
+    @Value("${rag.store.bulk-load.spool-dir:}")
+    private String spoolDir;
+
+    /**
+     * 开启一次批量导入会话，调用方负责在结束时调用 {@link BulkLoadSession#commit()} 或 {@link BulkLoadSession#close()}
+     * <p>
+     * 解析与向量化期间只把编码好的行写入本地暂存文件，不占用数据库连接和事务；
+     * 提交时才取连接，在一个短事务内完成 COPY、删除旧片段与合并。
+     */
+    public BulkLoadSession open() throws SQLException {
+        try {
+            Path spool = spoolDir.isBlank()
+                    ? Files.createTempFile("rag-bulk-load-", binary ? ".bin" : ".csv")
+                    : Files.createTempFile(Files.createDirectories(Path.of(spoolDir)), "rag-bulk-load-", binary ? ".bin" : ".csv");
+            BulkLoadSession session = new BulkLoadSession(dataSource, spool, binary, vectorIndexManager, knowledgePartitionManager, knowledgeVersionStore);
+            if (binary) {
+                session.out.write(BINARY_HEADER);
+            }
+            return session;
+        } catch (IOException e) {
+            throw new SQLException("创建批量导入暂存文件失败", e);
+        }
+    }
+
+    public static class BulkLoadSession implements AutoCloseable {
+
+        private final DataSource dataSource;
+        private final Path spool;
+        private final OutputStream out;
+        private final boolean binary;
+        private final VectorIndexManager vectorIndexManager;
+        private final KnowledgePartitionManager knowledgePartitionManager;
+        private final KnowledgeVersionStore knowledgeVersionStore;
+        /** 按知识库记录写入行数与待删除的旧片段 */
+        private final Map<String, Long> rowsByKnowledge = new HashMap<>();
+        private final Map<String, Set<String>> staleIds = new HashMap<>();
+        private long rows;
+        private boolean finished;
+        private boolean closed;
+
+        private BulkLoadSession(DataSource dataSource, Path spool, boolean binary,
+                                VectorIndexManager vectorIndexManager, KnowledgePartitionManager knowledgePartitionManager,
+                                KnowledgeVersionStore knowledgeVersionStore) throws IOException {
+            this.dataSource = dataSource;
+            this.spool = spool;
+            this.out = new BufferedOutputStream(Files.newOutputStream(spool), 1 << 16);
+            this.binary = binary;
+            this.vectorIndexManager = vectorIndexManager;
+            this.knowledgePartitionManager = knowledgePartitionManager;
+            this.knowledgeVersionStore = knowledgeVersionStore;
+        }
+
+        /**
+         * 写入一批已向量化的文档到暂存文件，调用方需保证串行写入
+         */
+        public synchronized void write(List<Document> documents, List<float[]> embeddings) throws SQLException {
+            if (documents.size() != embeddings.size()) {
+                throw new IllegalArgumentException("文档数量与向量数量不一致: " + documents.size() + " != " + embeddings.size());
+            }
+            try {
+                byte[] bytes = binary ? encodeBinary(documents, embeddings) : encodeCsv(documents, embeddings);
+                out.write(bytes);
+                rows += documents.size();
+                documents.forEach(document -> rowsByKnowledge.merge(PgVectorRepository.knowledgeOf(document), 1L, Long::sum));
+            } catch (IOException e) {
+                throw new SQLException("写入批量导入暂存文件失败", e);
+            }
+        }
+
+        /**
+         * 登记需要删除的旧片段，在提交时与新数据一起生效
+         */
+        public synchronized void deleteOnCommit(String knowledge, Collection<String> ids) {
+            if (!ids.isEmpty()) {
+                staleIds.computeIfAbsent(knowledge, key -> new HashSet<>()).addAll(ids);
+            }
+        }
+
+        /**
+         * 在一个短事务内把暂存文件 COPY 到临时表，删除登记的旧片段，再合并到向量表并提交
+         *
+         * @return 合并的行数
+         */
+        public synchronized long commit() throws SQLException {
+            try {
+                try {
+                    if (binary) {
+                        out.write(new byte[]{(byte) 0xFF, (byte) 0xFF});
+                    }
+                    out.close();
+                } catch (IOException e) {
+                    throw new SQLException("写入批量导入暂存文件失败", e);
+                }
+                // 分区在单独的事务中创建，须在本事务锁定父表之前完成
+                Map<String, Long> rowsByPartition = new HashMap<>();
+                rowsByKnowledge.forEach((knowledge, count) -> rowsByPartition.put(knowledgePartitionManager.ensurePartition(knowledge), count));
+                long[] result;
+                try {
+                    result = load();
+                } catch (SQLException e) {
+                    if (!KnowledgePartitionManager.isMissingPartition(e)) {
+                        throw e;
+                    }
+                    // 分区在确认之后被删除，重新创建后用暂存文件重放一次
+                    rowsByKnowledge.keySet().forEach(knowledgePartitionManager::recreatePartition);
+                    result = load();
+                }
+                finished = true;
+                log.info("批量导入完成，COPY {} 行，合并 {} 行，删除 {} 行", result[0], result[1], result[2]);
+                rowsByPartition.forEach(vectorIndexManager::recordRowsWritten);
+                Set<String> changed = new HashSet<>(rowsByKnowledge.keySet());
+                changed.addAll(staleIds.keySet());
+                changed.forEach(knowledgeVersionStore::bump);
+                return result[1];
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * 在一个事务内执行 COPY、删除和合并，失败时回滚，暂存文件保留可重放
+         *
+         * @return COPY 行数、合并行数、删除行数
+         */
+        private long[] load() throws SQLException {
+            long copied;
+            int deleted = 0;
+            int merged;
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute(CREATE_STAGING_SQL);
+                    }
+                    try (InputStream in = new BufferedInputStream(Files.newInputStream(spool), 1 << 16)) {
+                        copied = connection.unwrap(PGConnection.class).getCopyAPI()
+                                .copyIn(String.format(COPY_SQL, binary ? "binary" : "csv"), in);
+                    }
+                    for (Map.Entry<String, Set<String>> entry : staleIds.entrySet()) {
+                        try (PreparedStatement statement = connection.prepareStatement(DELETE_SQL)) {
+                            statement.setString(1, entry.getKey());
+                            statement.setArray(2, connection.createArrayOf("uuid", entry.getValue().toArray()));
+                            deleted += statement.executeUpdate();
+                        }
+                    }
+                    try (Statement statement = connection.createStatement()) {
+                        merged = statement.executeUpdate(MERGE_SQL);
+                    }
+                    connection.commit();
+                } catch (SQLException | IOException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } catch (IOException e) {
+                throw new SQLException("读取批量导入暂存文件失败", e);
+            }
+            return new long[]{copied, merged, deleted};
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * 删除暂存文件，未提交的数据随之丢弃，数据库中不会留下任何痕迹
+         */
+        @Override
+        public synchronized void close() throws SQLException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.warn("关闭批量导入暂存文件失败: {}", spool, e);
+            }
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                log.warn("删除批量导入暂存文件失败: {}", spool, e);
+            }
+            if (!finished) {
+                log.warn("批量导入未完成，已丢弃 {} 行", rows);
+            }
+        }
+
+        private static byte[] encodeBinary(List<Document> documents, List<float[]> embeddings) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                float[] embedding = embeddings.get(i);
+                out.writeShort(5);
+                // uuid：16 字节
+                UUID id = UUID.fromString(document.getId());
+                out.writeInt(16);
+                out.writeLong(id.getMostSignificantBits());
+                out.writeLong(id.getLeastSignificantBits());
+                writeText(out, sanitize(PgVectorRepository.knowledgeOf(document)));
+                // text 与 json 的二进制格式都是 UTF-8 文本
+                writeText(out, sanitize(document.getText()));
+                writeText(out, sanitize(JSON.toJSONString(document.getMetadata())));
+                // vector：int16 维度 + int16 保留位 + float4 数组
+                out.writeInt(4 + 4 * embedding.length);
+                out.writeShort(embedding.length);
+                out.writeShort(0);
+                for (float value : embedding) {
+                    out.writeFloat(value);
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static byte[] encodeCsv(List<Document> documents, List<float[]> embeddings) {
+            StringBuilder csv = new StringBuilder();
+            for (int i = 0; i < documents.size(); i++) {
+                Document document = documents.get(i);
+                csv.append(document.getId()).append(',');
+                appendQuoted(csv, sanitize(PgVectorRepository.knowledgeOf(document)));
+                csv.append(',');
+                appendQuoted(csv, sanitize(document.getText()));
+                csv.append(',');
+                appendQuoted(csv, sanitize(JSON.toJSONString(document.getMetadata())));
+                csv.append(",\"[");
+                float[] embedding = embeddings.get(i);
+                for (int j = 0; j < embedding.length; j++) {
+                    csv.append(j == 0 ? "" : ",").append(embedding[j]);
+                }
+                csv.append("]\"\n");
+            }
+            return csv.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static void writeText(DataOutputStream out, String text) throws IOException {
+            byte[] value = text.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(value.length);
+            out.write(value);
+        }
+
+        private static void appendQuoted(StringBuilder csv, String value) {
+            csv.append('"').append(value.replace("\"", "\"\"")).append('"');
+        }
+
+        /**
+         * PostgreSQL 的 text 不允许包含 \u0000
+         */
+        private static String sanitize(String value) {
+            return value == null ? "" : value.replace("\u0000", "");
+        }
+    }
+
+}
@@ -0,0 +1,355 @@
+package com.ywzai.trigger.service.store;
+
+import com.alibaba.fastjson.JSON;
+import com.pgvector.PGvector;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.ai.document.Document;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-20
+ * @Description: 基于预先计算好的向量直接读写 vector_store_openai，避免 PgVectorStore 内部重复调用向量模型；
+ * 表按知识库分区，所有读写都带上知识库条件，只落到单个分区
+ * @Version: 1.0
+ */
+@Slf4j
+@Repository
+public class PgVectorRepository {
+
+    public static final String VECTOR_TABLE_NAME = "vector_store_openai";
+    public static final String METADATA_KNOWLEDGE = "knowledge";
+    /** content_tsv 生成列使用的全文检索配置，按空白和标点切分且不做词干化，标识符保持原样 */
+    public static final String TEXT_SEARCH_CONFIG = "simple";
+
+    private static final String INSERT_SQL_PREFIX = "INSERT INTO " + VECTOR_TABLE_NAME + " (id, knowledge, content, metadata, embedding) VALUES ";
+    private static final String INSERT_SQL_VALUES = "(?, ?, ?, ?::jsonb, ?)";
+    private static final String INSERT_SQL_SUFFIX = " ON CONFLICT (knowledge, id) DO UPDATE SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, embedding = EXCLUDED.embedding";
+    /** 单条多值 INSERT 的最大行数，避免超过 PostgreSQL 单语句 65535 个参数的上限 */
+    private static final int MAX_ROWS_PER_INSERT = 1000;
+
+    static final RowMapper<Document> DOCUMENT_ROW_MAPPER = (rs, rowNum) -> Document.builder()
+            .id(rs.getString("id"))
+            .text(rs.getString("content"))
+            .metadata(parseMetadata(rs.getString("metadata")))
+            .score(1.0 - rs.getDouble("distance"))
+            .build();
+
+    private static final RowMapper<Document> SCORED_DOCUMENT_ROW_MAPPER = (rs, rowNum) -> Document.builder()
+            .id(rs.getString("id"))
+            .text(rs.getString("content"))
+            .metadata(parseMetadata(rs.getString("metadata")))
+            .score(rs.getDouble("score"))
+            .build();
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private VectorIndexManager vectorIndexManager;
+    @Resource
+    private KnowledgePartitionManager knowledgePartitionManager;
+    @Resource
+    private KnowledgeVersionStore knowledgeVersionStore;
+
+    /**
+     * 在单个知识库内进行相似度检索（余弦距离），使用默认检索档位
+     *
+     * @param embedding 问题向量
+     * @param topK      返回条数
+     * @param knowledge 知识库标签
+     * @return 按相似度排序的文档
+     */
+    public List<Document> similaritySearch(float[] embedding, int topK, String knowledge) {
+        return similaritySearch(embedding, topK, knowledge, vectorIndexManager.getDefaultProfile());
+    }
+
+    /**
+     * 在单个知识库内进行相似度检索（余弦距离），分区裁剪后只扫描该知识库分区上的向量索引
+     *
+     * @param embedding 问题向量
+     * @param topK      返回条数
+     * @param knowledge 知识库标签
+     * @param profile   召回率/延迟档位
+     * @return 按相似度排序的文档
+     */
+    public List<Document> similaritySearch(float[] embedding, int topK, String knowledge, SearchProfile profile) {
+        return similaritySearch(embedding, topK, knowledge, profile, vectorIndexManager.getRescoreFactor());
+    }
+
+    /**
+     * 压缩索引模式下先从压缩索引取 topK * rescoreFactor 条候选，再按全精度向量的距离重排取 topK
+     */
+    List<Document> similaritySearch(float[] embedding, int topK, String knowledge, SearchProfile profile, int rescoreFactor) {
+        if (StringUtils.isBlank(knowledge)) {
+            return List.of();
+        }
+        List<Object> args = new ArrayList<>();
+        String sql = vectorSearchSql("knowledge = ?", knowledge, new PGvector(embedding), topK, rescoreFactor, args);
+        return query(sql, DOCUMENT_ROW_MAPPER, args, List.of(knowledge), profile, indexLimit(topK, rescoreFactor));
+    }
+
+    /**
+     * 在多个知识库中检索，一条 SQL 完成，知识库标签作为数组参数绑定
+     *
+     * @param embedding  问题向量
+     * @param topK       返回条数
+     * @param knowledges 知识库标签
+     * @param mergeMode  GLOBAL 为所有知识库统一取前 topK 条；QUOTA 为每个知识库各取 topK / 知识库数（向上取整）条，再按距离排序
+     * @return 按相似度排序的文档
+     */
+    public List<Document> similaritySearch(float[] embedding, int topK, Collection<String> knowledges, TagMergeMode mergeMode) {
+        List<String> tags = knowledges.stream().filter(StringUtils::isNotBlank).distinct().toList();
+        if (tags.isEmpty()) {
+            return List.of();
+        }
+        if (tags.size() == 1) {
+            return similaritySearch(embedding, topK, tags.get(0));
+        }
+        SearchProfile profile = vectorIndexManager.getDefaultProfile();
+        int rescoreFactor = vectorIndexManager.getRescoreFactor();
+        PGvector queryVector = new PGvector(embedding);
+        List<Object> args = new ArrayList<>();
+        if (mergeMode == TagMergeMode.QUOTA) {
+            int quota = (topK + tags.size() - 1) / tags.size();
+            args.add(tags.toArray(new String[0]));
+            // 每个知识库各自按索引取前 quota 条，LATERAL 子查询中的知识库条件在执行时裁剪到单个分区
+            String sql = "SELECT d.id, d.content, d.metadata, d.distance FROM unnest(?::text[]) AS tag(name) CROSS JOIN LATERAL (" +
+                    vectorSearchSql("knowledge = tag.name", null, queryVector, quota, rescoreFactor, args) + ") d ORDER BY d.distance";
+            return query(sql, DOCUMENT_ROW_MAPPER, args, tags, profile, indexLimit(quota, rescoreFactor));
+        }
+        String sql = vectorSearchSql("knowledge = ANY(?)", tags.toArray(new String[0]), queryVector, topK, rescoreFactor, args);
+        return query(sql, DOCUMENT_ROW_MAPPER, args, tags, profile, indexLimit(topK, rescoreFactor));
+    }
+
+    /**
+     * 混合检索：全文检索与向量检索在同一条 SQL 中各取候选，再按倒数排名融合（RRF）排序，
+     * 弥补向量检索对类名、错误码等精确标识符不敏感的问题；多个知识库时统一取候选
+     *
+     * @param embedding  问题向量
+     * @param queryText  问题原文
+     * @param topK       返回条数
+     * @param knowledges 知识库标签
+     * @param candidates 每一路检索的候选数
+     * @param rrfK       RRF 平滑常数，越大排名靠后的候选权重越高
+     * @return 按融合得分排序的文档，score 为融合得分
+     */
+    public List<Document> hybridSearch(float[] embedding, String queryText, int topK, Collection<String> knowledges, int candidates, int rrfK) {
+        List<String> tags = knowledges.stream().filter(StringUtils::isNotBlank).distinct().toList();
+        if (tags.isEmpty()) {
+            return List.of();
+        }
+        String[] tagArray = tags.toArray(new String[0]);
+        int rescoreFactor = vectorIndexManager.getRescoreFactor();
+        List<Object> args = new ArrayList<>();
+        String vectorHitsSql = vectorSearchSql("knowledge = ANY(?)", tagArray, new PGvector(embedding), candidates, rescoreFactor, args);
+        Collections.addAll(args, queryText, tagArray, candidates, rrfK, rrfK, tagArray, topK);
+        String sql = "WITH vector_hits AS (" +
+                "SELECT id, row_number() OVER (ORDER BY distance) AS rank FROM (" + vectorHitsSql + ") v), " +
+                // 问题按与 content_tsv 相同的配置分词，词项之间取 OR，词项加引号后原样转为 tsquery，避免特殊字符被当作运算符
+                "query AS (SELECT string_agg('''' || replace(replace(lexeme, '\\', '\\\\'), '''', '''''') || '''', ' | ')::tsquery AS tsq " +
+                "FROM unnest(tsvector_to_array(to_tsvector('" + TEXT_SEARCH_CONFIG + "', ?))) AS lexeme), " +
+                "text_hits AS (SELECT id, row_number() OVER (ORDER BY score DESC) AS rank FROM (" +
+                "SELECT t.id, ts_rank_cd(t.content_tsv, query.tsq) AS score FROM " + VECTOR_TABLE_NAME + " t, query " +
+                "WHERE t.knowledge = ANY(?) AND t.content_tsv @@ query.tsq ORDER BY score DESC LIMIT ?) x), " +
+                "fused AS (SELECT COALESCE(v.id, x.id) AS id, " +
+                "COALESCE(1.0 / (? + v.rank), 0) + COALESCE(1.0 / (? + x.rank), 0) AS score " +
+                "FROM vector_hits v FULL OUTER JOIN text_hits x ON v.id = x.id) " +
+                "SELECT t.id, t.content, t.metadata, f.score FROM fused f JOIN " + VECTOR_TABLE_NAME + " t " +
+                "ON t.knowledge = ANY(?) AND t.id = f.id ORDER BY f.score DESC LIMIT ?";
+        return query(sql, SCORED_DOCUMENT_ROW_MAPPER, args, tags, vectorIndexManager.getDefaultProfile(), indexLimit(candidates, rescoreFactor));
+    }
+
+    /**
+     * 向量检索子查询，返回 id、content、metadata、distance 四列；压缩索引模式下先从压缩索引取 limit * rescoreFactor 条候选，
+     * 再按全精度向量的距离重排取 limit 条。参数按占位符顺序追加到 args
+     *
+     * @param condition    知识库过滤条件
+     * @param conditionArg 过滤条件的参数，条件中没有占位符时为 null
+     */
+    private String vectorSearchSql(String condition, Object conditionArg, PGvector queryVector, int limit, int rescoreFactor, List<Object> args) {
+        VectorCompression compression = vectorIndexManager.getCompression();
+        // 与 PgVectorStore 默认的相似度阈值（0，即余弦距离小于 1）保持一致
+        if (compression == VectorCompression.NONE) {
+            args.add(queryVector);
+            if (conditionArg != null) {
+                args.add(conditionArg);
+            }
+            Collections.addAll(args, queryVector, limit);
+            return "SELECT id, content, metadata, embedding <=> ? AS distance FROM " + VECTOR_TABLE_NAME +
+                    " WHERE " + condition + " AND embedding <=> ? < 1 ORDER BY distance LIMIT ?";
+        }
+        args.add(queryVector);
+        if (conditionArg != null) {
+            args.add(conditionArg);
+        }
+        Collections.addAll(args, queryVector, indexLimit(limit, rescoreFactor), queryVector, limit);
+        return "SELECT id, content, metadata, embedding <=> ? AS distance FROM (" +
+                "SELECT id, content, metadata, embedding FROM " + VECTOR_TABLE_NAME + " WHERE " + condition +
+                " ORDER BY " + compression.distanceExpression(vectorIndexManager.getDimensions()) + " LIMIT ?) candidates " +
+                "WHERE embedding <=> ? < 1 ORDER BY distance LIMIT ?";
+    }
+
+    /**
+     * 需要从索引中取出的条数
+     */
+    private int indexLimit(int limit, int rescoreFactor) {
+        return vectorIndexManager.getCompression() == VectorCompression.NONE ? limit : limit * Math.max(1, rescoreFactor);
+    }
+
+    private List<Document> query(String sql, RowMapper<Document> rowMapper, List<Object> args, Collection<String> knowledges,
+                                 SearchProfile profile, int indexLimit) {
+        List<String> tables = knowledges.stream().map(KnowledgePartitionManager::partitionTable).toList();
+        String settingSql = vectorIndexManager.searchSettingSql(tables, profile, indexLimit);
+        if (settingSql == null) {
+            return jdbcTemplate.query(sql, rowMapper, args.toArray());
+        }
+        // SET LOCAL 只在当前事务内生效，不影响连接池中的其他查询
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.execute(settingSql);
+            return jdbcTemplate.query(sql, rowMapper, args.toArray());
+        });
+    }
+
+    /**
+     * 写入已计算好向量的文档，每 1000 行合并为一条多值 INSERT，文档元数据中必须带有知识库标签
+     *
+     * @param documents  文档
+     * @param embeddings 与文档一一对应的向量
+     */
+    public void add(List<Document> documents, List<float[]> embeddings) {
+        if (documents.size() != embeddings.size()) {
+            throw new IllegalArgumentException("文档数量与向量数量不一致: " + documents.size() + " != " + embeddings.size());
+        }
+        Map<String, Long> rowsByPartition = new HashMap<>();
+        Set<String> knowledges = new HashSet<>();
+        for (Document document : documents) {
+            String knowledge = knowledgeOf(document);
+            knowledges.add(knowledge);
+            rowsByPartition.merge(knowledgePartitionManager.ensurePartition(knowledge), 1L, Long::sum);
+        }
+        for (int start = 0; start < documents.size(); start += MAX_ROWS_PER_INSERT) {
+            int end = Math.min(start + MAX_ROWS_PER_INSERT, documents.size());
+            StringBuilder sql = new StringBuilder(INSERT_SQL_PREFIX);
+            List<Object> args = new ArrayList<>((end - start) * 5);
+            for (int i = start; i < end; i++) {
+                Document document = documents.get(i);
+                sql.append(i == start ? "" : ", ").append(INSERT_SQL_VALUES);
+                args.add(UUID.fromString(document.getId()));
+                args.add(knowledgeOf(document));
+                args.add(document.getText());
+                args.add(JSON.toJSONString(document.getMetadata()));
+                args.add(new PGvector(embeddings.get(i)));
+            }
+            sql.append(INSERT_SQL_SUFFIX);
+            try {
+                jdbcTemplate.update(sql.toString(), args.toArray());
+            } catch (DataAccessException e) {
+                if (!KnowledgePartitionManager.isMissingPartition(e)) {
+                    throw e;
+                }
+                // 分区在确认之后被删除，重新创建后重试一次
+                documents.subList(start, end).stream().map(PgVectorRepository::knowledgeOf).distinct()
+                        .forEach(knowledgePartitionManager::recreatePartition);
+                jdbcTemplate.update(sql.toString(), args.toArray());
+            }
+        }
+        rowsByPartition.forEach(vectorIndexManager::recordRowsWritten);
+        knowledges.forEach(knowledgeVersionStore::bump);
+        log.debug("写入向量库 {} 条文档", documents.size());
+    }
+
+    /**
+     * 查询某个知识库下某个来源已入库的片段ID，上传文件与各代码库的同名来源互不影响
+     *
+     * @param knowledge 知识库标签
+     * @param source    来源（上传文件名或仓库内相对路径）
+     * @param repoUrl   代码库地址，为 null 时只查询上传文件的片段
+     * @return 片段ID
+     */
+    public Set<String> findIdsBySource(String knowledge, String source, String repoUrl) {
+        if (repoUrl == null) {
+            String sql = "SELECT id FROM " + VECTOR_TABLE_NAME + " WHERE knowledge = ? AND metadata->>'source' = ? AND metadata->>'repoUrl' IS NULL";
+            return new HashSet<>(jdbcTemplate.queryForList(sql, String.class, knowledge, source));
+        }
+        String sql = "SELECT id FROM " + VECTOR_TABLE_NAME + " WHERE knowledge = ? AND metadata->>'source' = ? AND metadata->>'repoUrl' = ?";
+        return new HashSet<>(jdbcTemplate.queryForList(sql, String.class, knowledge, source, repoUrl));
+    }
+
+    /**
+     * 查询某个知识库下由指定代码库写入的所有来源
+     *
+     * @param knowledge 知识库标签
+     * @param repoUrl   代码库地址
+     * @return 来源集合
+     */
+    public Set<String> findSourcesByRepository(String knowledge, String repoUrl) {
+        String sql = "SELECT DISTINCT metadata->>'source' FROM " + VECTOR_TABLE_NAME +
+                " WHERE knowledge = ? AND metadata->>'repoUrl' = ? AND metadata->>'source' IS NOT NULL";
+        return new HashSet<>(jdbcTemplate.queryForList(sql, String.class, knowledge, repoUrl));
+    }
+
+    /**
+     * 按ID批量删除某个知识库中的片段
+     *
+     * @param knowledge 知识库标签
+     * @param ids       片段ID
+     * @return 删除的行数
+     */
+    public int deleteByIds(String knowledge, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        String sql = "DELETE FROM " + VECTOR_TABLE_NAME + " WHERE knowledge = ? AND id = ANY(?)";
+        int deleted = jdbcTemplate.update(sql, ps -> {
+            ps.setString(1, knowledge);
+            ps.setArray(2, ps.getConnection().createArrayOf("uuid", ids.toArray()));
+        });
+        if (deleted > 0) {
+            knowledgeVersionStore.bump(knowledge);
+        }
+        return deleted;
+    }
+
+    /**
+     * 删除某个知识库下某个来源的全部片段
+     *
+     * @param knowledge 知识库标签
+     * @param source    来源
+     * @return 删除的行数
+     */
+    public int deleteBySource(String knowledge, String source) {
+        String sql = "DELETE FROM " + VECTOR_TABLE_NAME + " WHERE knowledge = ? AND metadata->>'source' = ?";
+        int deleted = jdbcTemplate.update(sql, knowledge, source);
+        if (deleted > 0) {
+            knowledgeVersionStore.bump(knowledge);
+        }
+        return deleted;
+    }
+
+    static String knowledgeOf(Document document) {
+        Object knowledge = document.getMetadata().get(METADATA_KNOWLEDGE);
+        if (knowledge == null || StringUtils.isBlank(knowledge.toString())) {
+            throw new IllegalArgumentException("文档缺少知识库标签: " + document.getId());
+        }
+        return knowledge.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> parseMetadata(String metadata) {
+        if (StringUtils.isBlank(metadata)) {
+            return Map.of();
+        }
+        return JSON.parseObject(metadata, Map.class);
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.ywzai.trigger.service.store;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-25
+ * @Description: 近似检索的召回率/延迟档位，查询时换算为 hnsw.ef_search 或 ivfflat.probes
+ * @Version: 1.0
+ */
+public enum SearchProfile {
+
+    /** 延迟优先 */
+    FAST(40, 0.01),
+    /** 默认档位 */
+    BALANCED(100, 0.05),
+    /** 召回率优先 */
+    ACCURATE(400, 0.2);
+
+    /** pgvector 允许的 hnsw.ef_search 上限，超过时 SET 直接报错 */
+    public static final int MAX_EF_SEARCH = 1000;
+
+    /** HNSW 检索时的候选列表大小 */
+    private final int efSearch;
+    /** IVFFlat 检索时扫描的聚类数占比 */
+    private final double probesRatio;
+
+    SearchProfile(int efSearch, double probesRatio) {
+        this.efSearch = efSearch;
+        this.probesRatio = probesRatio;
+    }
+
+    /**
+     * ef_search 小于 topK 时最多只能返回 ef_search 条结果，同时不超过 pgvector 的上限
+     */
+    public int efSearch(int topK) {
+        return Math.min(Math.max(efSearch, topK), MAX_EF_SEARCH);
+    }
+
+    public int probes(int lists) {
+        return Math.max(1, (int) Math.ceil(lists * probesRatio));
+    }
+
+}
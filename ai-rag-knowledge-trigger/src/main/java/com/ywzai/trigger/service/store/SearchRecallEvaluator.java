@@ -0,0 +1,136 @@
+package com.ywzai.trigger.service.store;
+
+import com.pgvector.PGvector;
+import com.ywzai.api.dto.SearchRecallDTO;
+import com.ywzai.api.dto.SearchRecallReportDTO;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-27
+ * @Description: 召回率/延迟评估，从知识库中随机抽取片段向量作为问题，以关闭索引的精确检索为基准，
+ * 对比各检索档位和重排倍数下的召回率与延迟，用于选择压缩方式和检索参数
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class SearchRecallEvaluator {
+
+    private static final String SAMPLE_SQL = "SELECT embedding FROM " + PgVectorRepository.VECTOR_TABLE_NAME +
+            " WHERE knowledge = ? ORDER BY random() LIMIT ?";
+    private static final String EXACT_SQL = "SELECT id FROM " + PgVectorRepository.VECTOR_TABLE_NAME +
+            " WHERE knowledge = ? AND embedding <=> ? < 1 ORDER BY embedding <=> ? LIMIT ?";
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+    @Resource
+    private TransactionTemplate transactionTemplate;
+    @Resource
+    private PgVectorRepository pgVectorRepository;
+    @Resource
+    private VectorIndexManager vectorIndexManager;
+
+    /**
+     * 生成召回率/延迟报告，抽样问题会在每个参数组合下各检索一次
+     *
+     * @param knowledge 知识库标签
+     * @param samples   抽样问题数
+     * @param topK      每次检索返回条数
+     */
+    public SearchRecallReportDTO evaluate(String knowledge, int samples, int topK) {
+        List<float[]> queries = jdbcTemplate.query(SAMPLE_SQL, (rs, rowNum) -> new PGvector(rs.getString(1)).toArray(), knowledge, samples);
+        List<Set<String>> expected = new ArrayList<>(queries.size());
+        List<SearchRecallDTO> results = new ArrayList<>();
+        results.add(measure("EXACT", 1, queries, expected, query -> {
+            Set<String> ids = exactSearch(query, topK, knowledge);
+            expected.add(ids);
+            return ids;
+        }));
+
+        for (int rescoreFactor : rescoreFactors()) {
+            for (SearchProfile profile : SearchProfile.values()) {
+                results.add(measure(profile.name(), rescoreFactor, queries, expected, query -> ids(
+                        pgVectorRepository.similaritySearch(query, topK, knowledge, profile, rescoreFactor))));
+            }
+        }
+
+        String table = KnowledgePartitionManager.partitionTable(knowledge);
+        Long indexBytes = jdbcTemplate.queryForObject("SELECT COALESCE(pg_relation_size(to_regclass(?)), 0)",
+                Long.class, VectorIndexManager.indexName(table));
+        SearchRecallReportDTO report = SearchRecallReportDTO.builder()
+                .ragTag(knowledge)
+                .indexType(vectorIndexManager.getIndexType())
+                .compression(vectorIndexManager.getCompression().name())
+                .dimensions(vectorIndexManager.getDimensions())
+                .indexBytes(indexBytes == null ? 0 : indexBytes)
+                .samples(queries.size())
+                .topK(topK)
+                .results(results)
+                .build();
+        log.info("知识库 {} 召回率评估完成: {}", knowledge, report);
+        return report;
+    }
+
+    /**
+     * 未压缩时重排倍数不起作用；压缩时对比不重排、当前配置和两倍配置
+     */
+    private Collection<Integer> rescoreFactors() {
+        if (vectorIndexManager.getCompression() == VectorCompression.NONE) {
+            return List.of(1);
+        }
+        int configured = vectorIndexManager.getRescoreFactor();
+        return new TreeSet<>(List.of(1, configured, configured * 2));
+    }
+
+    private SearchRecallDTO measure(String profile, int rescoreFactor, List<float[]> queries, List<Set<String>> expected,
+                                    Function<float[], Set<String>> search) {
+        double[] latencies = new double[queries.size()];
+        double recallSum = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            Set<String> actual = search.apply(queries.get(i));
+            latencies[i] = (System.nanoTime() - start) / 1_000_000.0;
+            Set<String> truth = expected.get(i);
+            if (truth.isEmpty()) {
+                recallSum += 1;
+                continue;
+            }
+            recallSum += truth.stream().filter(actual::contains).count() / (double) truth.size();
+        }
+        Arrays.sort(latencies);
+        int count = queries.size();
+        return SearchRecallDTO.builder()
+                .profile(profile)
+                .rescoreFactor(rescoreFactor)
+                .recall(count == 0 ? 0 : recallSum / count)
+                .avgLatencyMs(count == 0 ? 0 : Arrays.stream(latencies).average().orElse(0))
+                .p95LatencyMs(count == 0 ? 0 : latencies[Math.min(count - 1, (int) Math.ceil(count * 0.95) - 1)])
+                .build();
+    }
+
+    /**
+     * 关闭索引扫描，按全精度向量顺序扫描得到准确结果
+     */
+    private Set<String> exactSearch(float[] query, int topK, String knowledge) {
+        PGvector queryVector = new PGvector(query);
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("SET LOCAL enable_indexscan = off");
+            return new HashSet<>(jdbcTemplate.queryForList(EXACT_SQL, String.class, knowledge, queryVector, queryVector, topK));
+        });
+    }
+
+    private static Set<String> ids(List<Document> documents) {
+        Set<String> ids = new HashSet<>(documents.size());
+        documents.forEach(document -> ids.add(document.getId()));
+        return ids;
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.ywzai.trigger.service.store;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-29
+ * @Description: 多知识库检索时结果的合并方式
+ * @Version: 1.0
+ */
+public enum TagMergeMode {
+
+    /** 所有知识库统一按相似度取前 topK 条 */
+    GLOBAL,
+    /** 每个知识库各取相同条数，避免某个知识库的结果被其他知识库挤掉 */
+    QUOTA
+
+}
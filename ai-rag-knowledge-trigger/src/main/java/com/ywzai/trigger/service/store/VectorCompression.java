@@ -0,0 +1,69 @@
+package com.ywzai.trigger.service.store;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-27
+ * @Description: 向量索引压缩方式，压缩后的索引只用于召回候选，最终排序仍使用表中的全精度向量
+ * @Version: 1.0
+ */
+public enum VectorCompression {
+
+    /** 直接在全精度向量上建索引，每维 4 字节 */
+    NONE("vector_cosine_ops") {
+        @Override
+        public String indexExpression(int dimensions) {
+            return "embedding";
+        }
+
+        @Override
+        public String distanceExpression(int dimensions) {
+            return "embedding <=> ?";
+        }
+    },
+    /** 半精度索引，每维 2 字节，召回率与全精度几乎一致 */
+    HALFVEC("halfvec_cosine_ops") {
+        @Override
+        public String indexExpression(int dimensions) {
+            return "(embedding::halfvec(" + dimensions + "))";
+        }
+
+        @Override
+        public String distanceExpression(int dimensions) {
+            return "embedding::halfvec(" + dimensions + ") <=> ?::halfvec(" + dimensions + ")";
+        }
+    },
+    /** 二值量化索引，每维 1 位，按汉明距离召回，需要较大的重排倍数 */
+    BINARY("bit_hamming_ops") {
+        @Override
+        public String indexExpression(int dimensions) {
+            return "(binary_quantize(embedding)::bit(" + dimensions + "))";
+        }
+
+        @Override
+        public String distanceExpression(int dimensions) {
+            return "binary_quantize(embedding)::bit(" + dimensions + ") <~> binary_quantize(?)";
+        }
+    };
+
+    /** 索引的操作符类 */
+    private final String opsClass;
+
+    VectorCompression(String opsClass) {
+        this.opsClass = opsClass;
+    }
+
+    public String getOpsClass() {
+        return opsClass;
+    }
+
+    /**
+     * 建索引的列或表达式，查询中的排序表达式必须与之完全一致才能使用索引
+     */
+    public abstract String indexExpression(int dimensions);
+
+    /**
+     * 召回候选时的排序表达式，参数为问题向量
+     */
+    public abstract String distanceExpression(int dimensions);
+
+}
@@ -0,0 +1,328 @@
+package com.ywzai.trigger.service.store;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-09-25
+ * @Description: 向量索引管理，在每个知识库分区上按配置创建 HNSW 或 IVFFlat 索引（可选半精度或二值量化），参数变化或大批量导入后在后台并发重建，不阻塞读写
+ * @Version: 1.0
+ */
+@Slf4j
+@Component
+public class VectorIndexManager {
+
+    public static final String INDEX_TYPE_HNSW = "hnsw";
+    public static final String INDEX_TYPE_IVFFLAT = "ivfflat";
+    public static final String INDEX_TYPE_NONE = "none";
+
+    private static final String INDEX_SUFFIX = "_embedding_idx";
+    private static final String BUILDING_INDEX_SUFFIX = "_embedding_idx_b";
+
+    private static final String FIND_INDEX_SQL = "SELECT c.relname AS name, am.amname AS method, array_to_string(c.reloptions, ',') AS options, " +
+            "pg_get_indexdef(c.oid) AS definition " +
+            "FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid JOIN pg_am am ON am.oid = c.relam " +
+            "WHERE i.indrelid = ?::regclass AND am.amname IN ('hnsw', 'ivfflat')";
+    private static final String LIST_PARTITIONS_SQL = "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = '" + PgVectorRepository.VECTOR_TABLE_NAME + "'::regclass";
+
+    @Resource
+    private JdbcTemplate jdbcTemplate;
+
+    /** 索引类型：hnsw、ivfflat 或 none */
+    @Value("${rag.store.index.type:hnsw}")
+    private String indexType;
+    /** HNSW 每个节点的最大连接数 */
+    @Value("${rag.store.index.m:16}")
+    private int m;
+    /** HNSW 构建时的候选列表大小 */
+    @Value("${rag.store.index.ef-construction:64}")
+    private int efConstruction;
+    /** 索引压缩方式：NONE、HALFVEC 或 BINARY，压缩后检索分两步，先在压缩索引上召回候选，再用全精度向量重排 */
+    @Value("${rag.store.index.compression:NONE}")
+    private VectorCompression compression;
+    /** 向量维度，需与向量模型输出及表结构一致 */
+    @Value("${rag.store.dimensions:${spring.ai.openai.embedding.options.dimensions:1536}}")
+    private int dimensions;
+    /** 压缩模式下召回的候选数为 topK 的倍数 */
+    @Value("${rag.store.index.rescore-factor:4}")
+    private int rescoreFactor;
+    /** IVFFlat 聚类数，小于等于 0 时按行数计算：100 万行以内为 行数/1000，以上为 sqrt(行数) */
+    @Value("${rag.store.index.lists:0}")
+    private int lists;
+    /** 默认检索档位 */
+    @Value("${rag.store.index.search-profile:BALANCED}")
+    private SearchProfile defaultProfile;
+    /** 单个分区累计写入超过该行数后重建索引，IVFFlat 的聚类中心只在构建时计算，数据分布变化后需要重建；小于等于 0 表示不自动重建 */
+    @Value("${rag.store.index.rebuild-after-rows:200000}")
+    private long rebuildAfterRows;
+    /** 构建索引可使用的内存，构建时间与其关系很大 */
+    @Value("${rag.store.index.maintenance-work-mem:1GB}")
+    private String maintenanceWorkMem;
+
+    private final Map<String, AtomicLong> rowsSinceBuild = new ConcurrentHashMap<>();
+    private final Set<String> rebuilding = ConcurrentHashMap.newKeySet();
+    /** 各分区 IVFFlat 索引的聚类数，用于换算 probes */
+    private final Map<String, Integer> currentLists = new ConcurrentHashMap<>();
+
+    private ExecutorService indexExecutor;
+
+    @PostConstruct
+    public void init() {
+        indexExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rag-vector-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        indexExecutor.shutdownNow();
+    }
+
+    /**
+     * 启动后检查每个分区的索引，不存在或参数与配置不一致时在后台重建
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        if (INDEX_TYPE_NONE.equalsIgnoreCase(indexType)) {
+            return;
+        }
+        try {
+            for (String table : jdbcTemplate.queryForList(LIST_PARTITIONS_SQL, String.class)) {
+                ensureIndex(table);
+            }
+        } catch (Exception e) {
+            log.warn("检查向量索引失败", e);
+        }
+    }
+
+    /**
+     * 为新建的空分区直接创建索引，在创建分区的事务中调用
+     */
+    public void createIndexIfMissing(String table) {
+        if (INDEX_TYPE_NONE.equalsIgnoreCase(indexType)) {
+            return;
+        }
+        int targetLists = INDEX_TYPE_IVFFLAT.equalsIgnoreCase(indexType) ? Math.max(1, lists) : 0;
+        jdbcTemplate.execute(indexDefinition("CREATE INDEX IF NOT EXISTS " + table + INDEX_SUFFIX + " ON " + table, targetLists));
+        if (targetLists > 0) {
+            currentLists.put(table, targetLists);
+        }
+    }
+
+    /**
+     * 记录写入分区的行数，累计超过阈值后触发后台重建
+     */
+    public void recordRowsWritten(String table, long rows) {
+        if (rebuildAfterRows <= 0 || INDEX_TYPE_NONE.equalsIgnoreCase(indexType)) {
+            return;
+        }
+        if (rowsSinceBuild.computeIfAbsent(table, key -> new AtomicLong(0)).addAndGet(rows) >= rebuildAfterRows) {
+            rebuildAsync(table);
+        }
+    }
+
+    /**
+     * 在后台重建分区索引，该分区已有重建任务时忽略
+     *
+     * @return 是否提交了新的重建任务
+     */
+    public boolean rebuildAsync(String table) {
+        if (!rebuilding.add(table)) {
+            return false;
+        }
+        indexExecutor.execute(() -> {
+            try {
+                rebuild(table);
+            } catch (Exception e) {
+                log.error("重建向量索引失败: {}", table, e);
+            } finally {
+                rebuilding.remove(table);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 分区删除后清理记录
+     */
+    public void forget(String table) {
+        rowsSinceBuild.remove(table);
+        currentLists.remove(table);
+    }
+
+    public SearchProfile getDefaultProfile() {
+        return defaultProfile;
+    }
+
+    public String getIndexType() {
+        return indexType;
+    }
+
+    public static String indexName(String table) {
+        return table + INDEX_SUFFIX;
+    }
+
+    public VectorCompression getCompression() {
+        return compression;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public int getRescoreFactor() {
+        return Math.max(1, rescoreFactor);
+    }
+
+    /**
+     * 检索前需要在事务内设置的参数，未建索引时返回 null
+     *
+     * @param topK 需要从索引中取出的条数，压缩模式下为候选数
+     */
+    public String searchSettingSql(String table, SearchProfile profile, int topK) {
+        return searchSettingSql(List.of(table), profile, topK);
+    }
+
+    /**
+     * 同时检索多个分区时，IVFFlat 按聚类数最多的分区换算 probes
+     */
+    public String searchSettingSql(Collection<String> tables, SearchProfile profile, int topK) {
+        if (INDEX_TYPE_HNSW.equalsIgnoreCase(indexType)) {
+            if (topK > SearchProfile.MAX_EF_SEARCH) {
+                log.warn("检索条数 {} 超过 hnsw.ef_search 上限 {}，索引最多返回 {} 条", topK, SearchProfile.MAX_EF_SEARCH, SearchProfile.MAX_EF_SEARCH);
+            }
+            return "SET LOCAL hnsw.ef_search = " + profile.efSearch(topK);
+        }
+        if (INDEX_TYPE_IVFFLAT.equalsIgnoreCase(indexType)) {
+            int maxLists = tables.stream().mapToInt(table -> currentLists.getOrDefault(table, 100)).max().orElse(100);
+            return "SET LOCAL ivfflat.probes = " + profile.probes(maxLists);
+        }
+        return null;
+    }
+
+    private void ensureIndex(String table) {
+        String indexName = table + INDEX_SUFFIX;
+        List<Map<String, Object>> indexes = jdbcTemplate.queryForList(FIND_INDEX_SQL, table);
+        Map<String, Object> current = indexes.stream()
+                .filter(index -> indexName.equals(index.get("name")))
+                .findFirst()
+                .orElse(null);
+        indexes.stream()
+                .filter(index -> !indexName.equals(index.get("name")))
+                .forEach(index -> log.warn("分区 {} 上存在未受管理的索引 {}，写入时需同时维护，如不再使用请手动删除", table, index.get("name")));
+        if (current != null && matchesConfig(current)) {
+            currentLists.put(table, parseLists(String.valueOf(current.get("options"))));
+            log.info("向量索引 {} 已就绪: {} {}", indexName, current.get("method"), current.get("options"));
+            return;
+        }
+        log.info("向量索引 {} 不存在或参数已变化，后台重建", indexName);
+        rebuildAsync(table);
+    }
+
+    /**
+     * 先并发构建新索引，完成后替换旧索引，构建期间旧索引继续提供检索
+     */
+    private void rebuild(String table) {
+        AtomicLong counter = rowsSinceBuild.get(table);
+        long rows = counter == null ? 0 : counter.getAndSet(0);
+        long start = System.currentTimeMillis();
+        int targetLists = INDEX_TYPE_IVFFLAT.equalsIgnoreCase(indexType) ? targetLists(table) : 0;
+        String indexName = table + INDEX_SUFFIX;
+        String buildingIndexName = table + BUILDING_INDEX_SUFFIX;
+        String createSql = indexDefinition("CREATE INDEX CONCURRENTLY " + buildingIndexName + " ON " + table, targetLists);
+        // CONCURRENTLY 不能在事务中执行，maintenance_work_mem 是会话级参数，全部在同一个自动提交的连接上执行
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                // 上次构建中断时留下的无效索引
+                statement.execute("DROP INDEX CONCURRENTLY IF EXISTS " + buildingIndexName);
+                statement.execute("SET maintenance_work_mem = '" + maintenanceWorkMem + "'");
+                try {
+                    statement.execute(createSql);
+                } finally {
+                    statement.execute("RESET maintenance_work_mem");
+                }
+                statement.execute("DROP INDEX CONCURRENTLY IF EXISTS " + indexName);
+                statement.execute("ALTER INDEX " + buildingIndexName + " RENAME TO " + indexName);
+            }
+            return null;
+        });
+        if (targetLists > 0) {
+            currentLists.put(table, targetLists);
+        }
+        log.info("向量索引重建完成，耗时 {} ms，自上次构建写入 {} 行: {}", System.currentTimeMillis() - start, rows, createSql);
+    }
+
+    private String indexDefinition(String prefix, int targetLists) {
+        if (INDEX_TYPE_IVFFLAT.equalsIgnoreCase(indexType)) {
+            return prefix + " USING ivfflat (" + indexColumn() + ") WITH (lists = " + targetLists + ")";
+        }
+        return prefix + " USING hnsw (" + indexColumn() + ") WITH (m = " + m + ", ef_construction = " + efConstruction + ")";
+    }
+
+    private String indexColumn() {
+        return compression.indexExpression(dimensions) + " " + compression.getOpsClass();
+    }
+
+    private int targetLists(String table) {
+        if (lists > 0) {
+            return lists;
+        }
+        Long rows = jdbcTemplate.queryForObject("SELECT count(*) FROM " + table, Long.class);
+        long count = rows == null ? 0 : rows;
+        long computed = count <= 1_000_000 ? count / 1000 : (long) Math.sqrt(count);
+        return (int) Math.max(1, computed);
+    }
+
+    private boolean matchesConfig(Map<String, Object> index) {
+        String method = String.valueOf(index.get("method"));
+        Set<String> options = Set.of(StringUtils.split(String.valueOf(index.get("options")), ','));
+        if (!method.equalsIgnoreCase(indexType) || !matchesCompression(String.valueOf(index.get("definition")))) {
+            return false;
+        }
+        if (INDEX_TYPE_HNSW.equalsIgnoreCase(indexType)) {
+            return options.contains("m=" + m) && options.contains("ef_construction=" + efConstruction);
+        }
+        // 未指定聚类数时沿用已有索引，由写入量触发重建
+        return lists <= 0 || options.contains("lists=" + lists);
+    }
+
+    private boolean matchesCompression(String definition) {
+        if (!definition.contains(" " + compression.getOpsClass())) {
+            return false;
+        }
+        return compression == VectorCompression.NONE || definition.contains("(" + dimensions + ")");
+    }
+
+    private static int parseLists(String options) {
+        for (String option : StringUtils.split(options, ',')) {
+            if (option.startsWith("lists=")) {
+                return Integer.parseInt(option.substring("lists=".length()));
+            }
+        }
+        return 100;
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.ywzai.trigger.service.chunk;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-05
+ * @Description: ChunkingEngine 单元测试：按文件名选择切分器、带重叠的贪心合并、超过阈值时分组并行合并
+ * @Version: 1.0
+ */
+class ChunkingEngineTest {
+
+    private static final int TARGET_TOKENS = 60;
+    private static final int OVERLAP_TOKENS = 20;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private AnnotationConfigApplicationContext context;
+
+    @AfterEach
+    void close() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void selectsChunkerByFilenameInOrder() {
+        ChunkingEngine engine = engine(Map.of());
+
+        assertTrue(engine.isStructured("src/main/java/Main.java"));
+        assertTrue(engine.isStructured("scripts/build.py"));
+        assertTrue(engine.isStructured("docs/README.MD"));
+        assertTrue(engine.isStructured("web/index.html"));
+        // SentenceChunker 支持任意来源，排在最后兜底
+        assertFalse(engine.isStructured("notes.txt"));
+        assertFalse(engine.isStructured("release.v2/CHANGELOG"));
+        assertFalse(engine.isStructured(null));
+    }
+
+    @Test
+    void packsSentencesWithOverlap() {
+        ChunkingEngine engine = engine(Map.of(
+                "rag.chunker.text.target-tokens", TARGET_TOKENS,
+                "rag.chunker.text.overlap-tokens", OVERLAP_TOKENS));
+        String text = sentences(60);
+
+        List<String> chunks = texts(engine.split(new Document(text, Map.of("knowledge", "test")), "notes.txt"));
+
+        assertTrue(chunks.size() > 1);
+        StringBuilder restored = new StringBuilder(chunks.get(0));
+        for (int i = 0; i < chunks.size(); i++) {
+            assertTrue(tokenCountEstimator.estimate(chunks.get(i)) <= TARGET_TOKENS, "片段超过目标 token 数: " + chunks.get(i));
+            if (i == 0) {
+                continue;
+            }
+            String overlap = overlap(chunks.get(i - 1), chunks.get(i));
+            assertFalse(overlap.isEmpty(), "相邻片段没有重叠: " + chunks.get(i));
+            assertTrue(tokenCountEstimator.estimate(overlap) <= OVERLAP_TOKENS, "重叠超过上限: " + overlap);
+            restored.append(chunks.get(i).substring(overlap.length()));
+        }
+        // 去掉重叠部分后按顺序拼接即为原文
+        assertEquals(text, restored.toString());
+    }
+
+    @Test
+    void mergesGroupsInParallelAboveThreshold() {
+        ChunkingEngine engine = engine(Map.of(
+                "rag.chunker.text.target-tokens", TARGET_TOKENS,
+                "rag.chunker.text.overlap-tokens", 0,
+                "rag.chunker.parallel-threshold-chars", 2000));
+        String text = sentences(400);
+        assertTrue(text.length() > 2000);
+
+        List<Document> documents = engine.split(new Document(text, Map.of("knowledge", "test")), "notes.txt");
+
+        assertTrue(documents.size() > 4);
+        for (Document document : documents) {
+            assertTrue(tokenCountEstimator.estimate(document.getText()) <= TARGET_TOKENS);
+            assertEquals("test", document.getMetadata().get("knowledge"));
+        }
+        // 各组并行合并后仍保持原文顺序，且不丢失、不重复内容
+        assertEquals(text, String.join("", texts(documents)));
+    }
+
+    private ChunkingEngine engine(Map<String, Object> properties) {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", new HashMap<>(properties)));
+        context.scan("com.ywzai.trigger.service.chunk");
+        context.refresh();
+        return context.getBean(ChunkingEngine.class);
+    }
+
+    /**
+     * 编号唯一的中文短句，便于定位重叠部分
+     */
+    private static String sentences(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append("这是第").append(i).append("句话，用来测试分块。");
+        }
+        return text.toString();
+    }
+
+    private static List<String> texts(List<Document> documents) {
+        return documents.stream().map(Document::getText).toList();
+    }
+
+    /**
+     * 后一个片段开头与前一个片段结尾重合的最长部分
+     */
+    private static String overlap(String previous, String next) {
+        for (int length = Math.min(previous.length(), next.length()); length > 0; length--) {
+            if (previous.endsWith(next.substring(0, length))) {
+                return next.substring(0, length);
+            }
+        }
+        return "";
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.ywzai.trigger.service.retrieval;
+
+import com.ywzai.trigger.service.store.KnowledgeVersionStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: ywz
+ * @CreateTime: 2025-10-05
+ * @Description: RetrievalCache 缓存键单元测试：标签带长度前缀后不同组合不会拼接出相同的键，标签顺序不影响键
+ * @Version: 1.0
+ */
+class RetrievalCacheTest {
+
+    private final RetrievalCache retrievalCache = new RetrievalCache();
+
+    @BeforeEach
+    void setUp() {
+        // 版本号固定为 0，不依赖 Redis
+        KnowledgeVersionStore knowledgeVersionStore = new KnowledgeVersionStore() {
+            @Override
+            public long current(String knowledge) {
+                return 0;
+            }
+        };
+        ReflectionTestUtils.setField(retrievalCache, "knowledgeVersionStore", knowledgeVersionStore);
+        ReflectionTestUtils.setField(retrievalCache, "enabled", true);
+    }
+
+    @Test
+    void separatorInsideTagDoesNotCollide() {
+        String joined = retrievalCache.key(List.of("a|b"), "问题", "VECTOR", 5);
+        String separate = retrievalCache.key(List.of("a", "b"), "问题", "VECTOR", 5);
+
+        assertNotNull(joined);
+        assertNotNull(separate);
+        assertNotEquals(joined, separate);
+    }
+
+    @Test
+    void tagOrderDoesNotChangeKey() {
+        assertEquals(retrievalCache.key(List.of("a", "b"), "问题", "VECTOR", 5),
+                retrievalCache.key(List.of("b", "a"), "问题", "VECTOR", 5));
+        assertEquals(retrievalCache.key(List.of("x", "a|b", "c"), "问题", "VECTOR", 5),
+                retrievalCache.key(List.of("c", "x", "a|b"), "问题", "VECTOR", 5));
+    }
+
+}
@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+# 离线压测：本地 OpenAI 桩服务 + docker 中的 Redis 与 pgvector，无需真实的 OpenAI Key
+# 用法：./run-loadtest.sh [LoadTestRunner 参数...]，例如 ./run-loadtest.sh --sessions=64 --turns=5 --uploads=40
+# 桩服务参数通过环境变量 STUB_ARGS 传入，例如 STUB_ARGS="--first-token-ms=500 --tokens-per-second=30 --error-rate=0.01"
+# 结果写入当前目录的 loadtest-result.json，每次发版前在同一台机器上用相同参数执行，结果可直接比较
+set -euo pipefail
+
+ROOT=$(cd "$(dirname "$0")/../../.." && pwd)
+DEV_OPS="$ROOT/docs/dev-ops"
+STUB_PORT=${STUB_PORT:-18080}
+APP_PORT=${APP_PORT:-8090}
+STUB_ARGS=${STUB_ARGS:-}
+LOG_DIR=${LOG_DIR:-/tmp/rag-loadtest}
+mkdir -p "$LOG_DIR"
+
+cd "$ROOT"
+# 库模块没有启动类，打包时跳过 repackage；应用按 classpath 启动
+mvn -B -q package dependency:build-classpath -DskipTests -Dspring-boot.repackage.skip=true \
+  -pl ai-rag-knowledge-app,ai-rag-knowledge-bench -am \
+  -Dmdep.outputFile="$LOG_DIR/classpath-\${project.artifactId}.txt"
+BENCH_JAR="$ROOT/ai-rag-knowledge-bench/target/benchmarks.jar"
+APP_CLASSPATH="$ROOT/ai-rag-knowledge-app/target/classes:$(cat "$LOG_DIR/classpath-ai-rag-knowledge-app.txt")"
+
+docker compose -f "$DEV_OPS/docker-compose-environment.yml" up -d redis vector_db
+
+cleanup() {
+  [[ -n "${APP_PID:-}" ]] && kill "$APP_PID" 2>/dev/null || true
+  [[ -n "${STUB_PID:-}" ]] && kill "$STUB_PID" 2>/dev/null || true
+}
+trap cleanup EXIT
+
+java -cp "$BENCH_JAR" com.ywzai.bench.load.OpenAiStubServer --port="$STUB_PORT" $STUB_ARGS > "$LOG_DIR/stub.log" 2>&1 &
+STUB_PID=$!
+
+java -cp "$APP_CLASSPATH" com.ywzai.app.Application \
+  --server.port="$APP_PORT" \
+  --spring.ai.openai.base-url="http://localhost:$STUB_PORT" \
+  --spring.ai.openai.api-key=stub \
+  --spring.ai.openai.chat.options.model=stub-chat \
+  --spring.ai.openai.embedding.options.model=stub-embedding \
+  --spring.datasource.url=jdbc:postgresql://localhost:5432/springai \
+  --spring.datasource.username=postgres \
+  --spring.datasource.password=postgres \
+  --redis.sdk.config.host=localhost \
+  --redis.sdk.config.port=16379 \
+  > "$LOG_DIR/app.log" 2>&1 &
+APP_PID=$!
+
+echo "等待应用启动，日志: $LOG_DIR/app.log"
+for _ in $(seq 1 120); do
+  if curl -sf "http://localhost:$APP_PORT/actuator/health" > /dev/null; then
+    break
+  fi
+  sleep 1
+done
+curl -sf "http://localhost:$APP_PORT/actuator/health" > /dev/null || { echo "应用启动失败"; exit 1; }
+
+java -cp "$BENCH_JAR" com.ywzai.bench.load.LoadTestRunner --target="http://localhost:$APP_PORT" --model=stub-chat "$@"
@@ -1 +1,49 @@
-CREATE EXTENSION IF NOT EXISTS vector;
\ No newline at end of file
+CREATE EXTENSION IF NOT EXISTS vector;
+
+-- 知识库片段按知识库标签分区，每个分区由应用中的 KnowledgePartitionManager 在首次写入时创建，
+-- 删除知识库即删除分区
+CREATE TABLE IF NOT EXISTS vector_store_openai (
+    id uuid NOT NULL DEFAULT gen_random_uuid(),
+    knowledge text NOT NULL,
+    content text,
+    metadata json,
+    embedding vector(1536),
+    -- 混合检索使用的全文检索列，simple 配置不做词干化，类名、错误码等标识符保持原样
+    content_tsv tsvector GENERATED ALWAYS AS (to_tsvector('simple', coalesce(content, ''))) STORED,
+    PRIMARY KEY (knowledge, id)
+) PARTITION BY LIST (knowledge);
+
+-- 按来源查找已入库片段，用于重复导入时的去重与清理，自动在每个分区上创建
+CREATE INDEX IF NOT EXISTS vector_store_openai_source_idx
+    ON vector_store_openai ((metadata ->> 'source'));
+
+-- 混合检索的全文索引，自动在每个分区上创建
+CREATE INDEX IF NOT EXISTS vector_store_openai_content_tsv_idx
+    ON vector_store_openai USING gin (content_tsv);
+
+-- 向量索引由应用中的 VectorIndexManager 按 rag.store.index.* 配置在每个分区上创建和重建，以下为默认配置对应的语句
+-- CREATE INDEX CONCURRENTLY <分区表>_embedding_idx ON <分区表>
+--     USING hnsw (embedding vector_cosine_ops) WITH (m = 16, ef_construction = 64);
+
+-- 压缩模式（rag.store.index.compression，需要 pgvector 0.7.0 及以上），表中仍保存全精度向量用于重排，只有索引被压缩：
+-- HALFVEC: USING hnsw ((embedding::halfvec(1536)) halfvec_cosine_ops)，索引约为原来的 1/2
+-- BINARY:  USING hnsw ((binary_quantize(embedding)::bit(1536)) bit_hamming_ops)，索引约为原来的 1/32
+-- 缩短维度（spring.ai.openai.embedding.options.dimensions，仅 text-embedding-3 系列支持）时，
+-- 需要同时把本文件中两张表的 vector(1536) 改为对应维度并重新导入全部知识库
+
+-- 历史对话与知识库分开存储，只在单个会话内检索，按会话ID过滤后精确计算距离，不需要向量索引
+CREATE TABLE IF NOT EXISTS vector_store_openai_history (
+    id uuid DEFAULT gen_random_uuid() PRIMARY KEY,
+    memory_id text NOT NULL,
+    content text,
+    metadata json,
+    embedding vector(1536),
+    create_time timestamp NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS vector_store_openai_history_memory_idx
+    ON vector_store_openai_history (memory_id);
+
+-- 按保留天数清理过期历史消息（rag.memory.vector-history.retention-days）
+CREATE INDEX IF NOT EXISTS vector_store_openai_history_create_time_idx
+    ON vector_store_openai_history (create_time);
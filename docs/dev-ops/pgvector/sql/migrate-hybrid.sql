@@ -0,0 +1,6 @@
+-- 为已有的分区表增加混合检索所需的全文检索列和索引，会重写全部分区，执行期间需停止写入
+ALTER TABLE vector_store_openai
+    ADD COLUMN IF NOT EXISTS content_tsv tsvector GENERATED ALWAYS AS (to_tsvector('simple', coalesce(content, ''))) STORED;
+
+CREATE INDEX IF NOT EXISTS vector_store_openai_content_tsv_idx
+    ON vector_store_openai USING gin (content_tsv);
@@ -0,0 +1,33 @@
+-- 将未分区的 vector_store_openai 迁移为按知识库分区的结构，迁移期间需停止写入
+-- 1. 保留旧表
+ALTER TABLE vector_store_openai RENAME TO vector_store_openai_legacy;
+ALTER INDEX IF EXISTS vector_store_openai_pkey RENAME TO vector_store_openai_legacy_pkey;
+ALTER INDEX IF EXISTS vector_store_openai_source_idx RENAME TO vector_store_openai_legacy_source_idx;
+DROP INDEX IF EXISTS vector_store_openai_embedding_idx;
+
+-- 2. 执行 init.sql 创建分区表和历史对话表
+
+-- 3. 为每个知识库创建分区，分区名与应用中的命名规则一致：vector_store_openai_p_ + md5(标签) 前 20 位
+DO $$
+DECLARE
+    tag text;
+BEGIN
+    FOR tag IN SELECT DISTINCT metadata ->> 'knowledge' FROM vector_store_openai_legacy WHERE metadata ->> 'knowledge' IS NOT NULL LOOP
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF vector_store_openai FOR VALUES IN (%L)',
+                       'vector_store_openai_p_' || left(md5(tag), 20), tag);
+    END LOOP;
+END $$;
+
+-- 4. 迁移数据
+INSERT INTO vector_store_openai (id, knowledge, content, metadata, embedding)
+SELECT id, metadata ->> 'knowledge', content, metadata, embedding
+FROM vector_store_openai_legacy
+WHERE metadata ->> 'knowledge' IS NOT NULL;
+
+INSERT INTO vector_store_openai_history (id, memory_id, content, metadata, embedding)
+SELECT id, metadata ->> 'historychat', content, metadata, embedding
+FROM vector_store_openai_legacy
+WHERE metadata ->> 'historychat' IS NOT NULL;
+
+-- 5. 确认无误后删除旧表，应用启动时会为每个分区创建向量索引
+-- DROP TABLE vector_store_openai_legacy;